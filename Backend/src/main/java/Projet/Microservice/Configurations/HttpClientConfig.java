@@ -0,0 +1,141 @@
+package Projet.Microservice.Configurations;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound HTTP clients, one connection pool per destination.
+ *
+ * Each phase of a call has its own timeout: waiting for a pooled connection (pool-timeout),
+ * opening it (connect-timeout) and waiting for the next chunk of response data (read-timeout).
+ * read-timeout restarts with every packet, so on top of them each call has an overall deadline:
+ * once it passes, the request is cancelled (its connection closed) wherever it is, including
+ * while the response body is being read.
+ * Pool usage is published as httpcomponents.httpclient.pool.* (tag httpclient=destination),
+ * latency as http.client.requests through the RestTemplateBuilder observation support.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    // Cancels calls that outlive their deadline; a cancel after completion does nothing
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService httpDeadlineTimer() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "http-client-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Bean
+    public RestTemplate keycloakRestTemplate(
+            RestTemplateBuilder builder, MeterRegistry meterRegistry,
+            @Value("${http.client.keycloak.max-connections:50}") int maxConnections,
+            @Value("${http.client.keycloak.connect-timeout:1s}") Duration connectTimeout,
+            @Value("${http.client.keycloak.read-timeout:2s}") Duration readTimeout,
+            @Value("${http.client.keycloak.pool-timeout:500ms}") Duration poolTimeout,
+            @Value("${http.client.keycloak.deadline:3s}") Duration deadline,
+            ScheduledExecutorService httpDeadlineTimer) {
+        return pooledRestTemplate(builder, meterRegistry, "keycloak", maxConnections, connectTimeout, readTimeout, poolTimeout,
+                deadline, httpDeadlineTimer);
+    }
+
+    @Bean
+    public RestTemplate currencyRestTemplate(
+            RestTemplateBuilder builder, MeterRegistry meterRegistry,
+            @Value("${http.client.currency.max-connections:10}") int maxConnections,
+            @Value("${http.client.currency.connect-timeout:2s}") Duration connectTimeout,
+            @Value("${http.client.currency.read-timeout:5s}") Duration readTimeout,
+            @Value("${http.client.currency.pool-timeout:1s}") Duration poolTimeout,
+            @Value("${http.client.currency.deadline:8s}") Duration deadline,
+            ScheduledExecutorService httpDeadlineTimer) {
+        return pooledRestTemplate(builder, meterRegistry, "currency", maxConnections, connectTimeout, readTimeout, poolTimeout,
+                deadline, httpDeadlineTimer);
+    }
+
+    @Bean
+    public RestTemplate recaptchaRestTemplate(
+            RestTemplateBuilder builder, MeterRegistry meterRegistry,
+            @Value("${http.client.recaptcha.max-connections:20}") int maxConnections,
+            @Value("${http.client.recaptcha.connect-timeout:1s}") Duration connectTimeout,
+            @Value("${http.client.recaptcha.read-timeout:3s}") Duration readTimeout,
+            @Value("${http.client.recaptcha.pool-timeout:500ms}") Duration poolTimeout,
+            @Value("${http.client.recaptcha.deadline:4s}") Duration deadline,
+            ScheduledExecutorService httpDeadlineTimer) {
+        return pooledRestTemplate(builder, meterRegistry, "recaptcha", maxConnections, connectTimeout, readTimeout, poolTimeout,
+                deadline, httpDeadlineTimer);
+    }
+
+    RestTemplate pooledRestTemplate(RestTemplateBuilder builder, MeterRegistry meterRegistry, String name,
+                                    int maxConnections, Duration connectTimeout, Duration readTimeout,
+                                    Duration poolTimeout, Duration deadline, ScheduledExecutorService deadlineTimer) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                .build();
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(poolTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        // Used when the server does not send a Keep-Alive header
+                        .setConnectionKeepAlive(TimeValue.ofSeconds(30))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build();
+
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+
+        return builder
+                .requestFactory(() -> new DeadlineRequestFactory(httpClient, deadline, deadlineTimer))
+                .build();
+    }
+
+    static class DeadlineRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+        private final Duration deadline;
+        private final ScheduledExecutorService timer;
+
+        DeadlineRequestFactory(CloseableHttpClient httpClient, Duration deadline, ScheduledExecutorService timer) {
+            super(httpClient);
+            this.deadline = deadline;
+            this.timer = timer;
+        }
+
+        @Override
+        protected void postProcessHttpRequest(ClassicHttpRequest request) {
+            if (request instanceof Cancellable cancellable) {
+                timer.schedule(cancellable::cancel, deadline.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package Projet.Microservice.Configurations;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+/**
+ * Topic for payment status events (PaymentOutboxRelay), created at startup when missing.
+ * Messages are keyed by bookingId, so the partition count bounds consumer parallelism.
+ */
+@Configuration
+public class KafkaConfig {
+
+    @Bean
+    public NewTopic paymentStatusEventsTopic(
+            @Value("${payments.outbox.topic:payment-status-events}") String topic,
+            @Value("${payments.outbox.topic-partitions:6}") int partitions,
+            @Value("${payments.outbox.topic-replicas:1}") short replicas) {
+        return TopicBuilder.name(topic)
+                .partitions(partitions)
+                .replicas(replicas)
+                .build();
+    }
+}
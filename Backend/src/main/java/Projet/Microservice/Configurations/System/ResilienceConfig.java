@@ -0,0 +1,64 @@
+package Projet.Microservice.Configurations.System;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+
+@Configuration
+@Slf4j
+public class ResilienceConfig {
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(MeterRegistry meterRegistry) {
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+        // State, call outcome and failure rate per breaker: resilience4j.circuitbreaker.*
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+        return registry;
+    }
+
+    @Bean
+    public CircuitBreaker keycloakIntrospectionCircuitBreaker(
+            CircuitBreakerRegistry registry, MeterRegistry meterRegistry,
+            @Value("${security.introspection.breaker.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${security.introspection.breaker.slow-call-rate-threshold:50}") float slowCallRateThreshold,
+            @Value("${security.introspection.breaker.slow-call-threshold:1s}") Duration slowCallThreshold,
+            @Value("${security.introspection.breaker.sliding-window-size:20}") int slidingWindowSize,
+            @Value("${security.introspection.breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${security.introspection.breaker.open-duration:30s}") Duration openDuration) {
+
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slowCallDurationThreshold(slowCallThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumCalls)
+                .waitDurationInOpenState(openDuration)
+                .permittedNumberOfCallsInHalfOpenState(3)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                // A 4xx means Keycloak answered; it must not open the circuit and trigger the fallback
+                .ignoreExceptions(HttpClientErrorException.class)
+                .build();
+
+        CircuitBreaker breaker = registry.circuitBreaker("keycloak-introspection", config);
+        breaker.getEventPublisher().onStateTransition(event -> {
+            log.warn("Circuit breaker {} changed state: {}", event.getCircuitBreakerName(), event.getStateTransition());
+            Counter.builder("resilience4j.circuitbreaker.transitions")
+                    .tag("name", event.getCircuitBreakerName())
+                    .tag("from", event.getStateTransition().getFromState().name())
+                    .tag("to", event.getStateTransition().getToState().name())
+                    .register(meterRegistry)
+                    .increment();
+        });
+        return breaker;
+    }
+}
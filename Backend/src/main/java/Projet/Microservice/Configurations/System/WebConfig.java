@@ -15,8 +15,8 @@ public class WebConfig implements WebMvcConfigurer {
                         "http://192.168.1.105:4200"   //  mobile access
                 )
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
-                .allowedHeaders("Authorization", "Content-Type", "Accept")
-                .exposedHeaders("Authorization")
+                .allowedHeaders("Authorization", "Content-Type", "Accept", "Idempotency-Key")
+                .exposedHeaders("Authorization", "Idempotent-Replayed")
                 .allowCredentials(true)
                 .maxAge(3600);
     }
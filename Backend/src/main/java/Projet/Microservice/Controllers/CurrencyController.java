@@ -1,11 +1,31 @@
 package Projet.Microservice.Controllers;
 
+import Projet.Microservice.DTO.BatchConversionRequestDTO;
+import Projet.Microservice.DTO.BatchConversionResponseDTO;
 import Projet.Microservice.Entities.Currency;
 import Projet.Microservice.Services.CurrencyConversionService;
+import Projet.Microservice.Services.CurrencyRates.ExchangeRateHistoryService;
+import Projet.Microservice.Services.CurrencyRates.ExchangeRateSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/currency")
@@ -14,6 +34,15 @@ public class CurrencyController {
     @Autowired
     private CurrencyConversionService conversionService;
 
+    @Autowired
+    private ExchangeRateHistoryService historyService;
+
+    @Value("${currency.rates.base:USD}")
+    private Currency baseCurrency;
+
+    @Value("${currency.convert.cache-max-age:60s}")
+    private Duration cacheMaxAge;
+
     @GetMapping("/convert")
     public BigDecimal convert(
             @RequestParam BigDecimal amount,
@@ -22,4 +51,103 @@ public class CurrencyController {
     ) {
         return conversionService.convert(amount, from, to);
     }
+
+    @PostMapping("/convert/batch")
+    public ResponseEntity<BatchConversionResponseDTO> convertBatch(
+            @RequestBody BatchConversionRequestDTO request,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch
+    ) {
+        return batchResponse(toItems(request), ifNoneMatch);
+    }
+
+    // GET variant of "one amount to many targets", cacheable by browsers and proxies
+    @GetMapping("/convert/batch")
+    public ResponseEntity<BatchConversionResponseDTO> convertToTargets(
+            @RequestParam BigDecimal amount,
+            @RequestParam Currency from,
+            @RequestParam List<Currency> to,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch
+    ) {
+        return batchResponse(fanOut(amount, from, to), ifNoneMatch);
+    }
+
+    // Rate recorded for the day of "at" (UTC)
+    @GetMapping("/rates/at")
+    public BigDecimal rateAt(
+            @RequestParam Instant at,
+            @RequestParam Currency from,
+            @RequestParam Currency to
+    ) {
+        return historyService.rateAt(at, from, to);
+    }
+
+    // Daily base-currency quotes for [start, end], every day filled
+    @GetMapping("/rates/history")
+    public Map<LocalDate, Map<Currency, BigDecimal>> rateHistory(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end
+    ) {
+        Map<LocalDate, Map<Currency, BigDecimal>> history = new LinkedHashMap<>();
+        historyService.snapshotsBetween(start, end).forEach((day, snapshot) -> history.put(day, quotes(snapshot)));
+        return history;
+    }
+
+    private ResponseEntity<BatchConversionResponseDTO> batchResponse(List<BatchConversionRequestDTO.Item> items,
+                                                                     String ifNoneMatch) {
+        BatchConversionResponseDTO response = conversionService.convertBatch(items);
+
+        // Same rates + same request => same results on every instance; weak because
+        // ratesFetchedAt can still differ between snapshots holding the same rates
+        String opaqueTag = "\"" + Long.toHexString(response.getRateVersion()) + "-" + digest(items) + "\"";
+        String etag = "W/" + opaqueTag;
+        CacheControl cacheControl = CacheControl.maxAge(cacheMaxAge).cachePublic();
+
+        // If-None-Match uses weak comparison: W/ is ignored
+        if (ifNoneMatch != null && (ifNoneMatch.contains(opaqueTag) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(cacheControl).body(response);
+    }
+
+    private Map<Currency, BigDecimal> quotes(ExchangeRateSnapshot snapshot) {
+        Map<Currency, BigDecimal> quotes = new EnumMap<>(Currency.class);
+        for (Currency currency : Currency.values()) {
+            BigDecimal rate = snapshot.rate(baseCurrency, currency);
+            if (rate != null) {
+                quotes.put(currency, rate);
+            }
+        }
+        return quotes;
+    }
+
+    private List<BatchConversionRequestDTO.Item> toItems(BatchConversionRequestDTO request) {
+        if (request.getItems() != null && !request.getItems().isEmpty()) {
+            return request.getItems();
+        }
+        if (request.getAmount() == null || request.getFrom() == null
+                || request.getTargets() == null || request.getTargets().isEmpty()) {
+            throw new IllegalArgumentException("Provide either items, or amount, from and targets");
+        }
+        return fanOut(request.getAmount(), request.getFrom(), request.getTargets());
+    }
+
+    private List<BatchConversionRequestDTO.Item> fanOut(BigDecimal amount, Currency from, List<Currency> targets) {
+        return targets.stream()
+                .map(to -> new BatchConversionRequestDTO.Item(amount, from, to))
+                .toList();
+    }
+
+    private String digest(List<BatchConversionRequestDTO.Item> items) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (BatchConversionRequestDTO.Item item : items) {
+                String amount = item.getAmount() != null ? item.getAmount().toPlainString() : "";
+                digest.update((amount + ':' + item.getFrom() + ':' + item.getTo() + ';')
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
 }
@@ -1,9 +1,13 @@
 package Projet.Microservice.Controllers;
 
 import Projet.Microservice.DTO.CreatePaymentRequestDTO;
+import Projet.Microservice.DTO.PaymentCursorPageDTO;
 import Projet.Microservice.DTO.PaymentRedirectDTO;
 import Projet.Microservice.DTO.PaymentResponseDTO;
+import Projet.Microservice.DTO.PaymentStatusSummaryDTO;
 import Projet.Microservice.Services.PaymentService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -14,11 +18,17 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 @RestController
 @RequestMapping("/api/payments")
 @RequiredArgsConstructor
@@ -28,6 +38,7 @@ import jakarta.validation.Valid;
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping
     @Operation(
@@ -86,6 +97,23 @@ public class PaymentController {
         return ResponseEntity.ok(payment);
     }
 
+    @GetMapping(value = "/{paymentId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Stream payment status",
+            description = "Server-Sent Events stream: sends the current status, then every transition until the payment reaches a final status"
+    )
+    @ApiResponse(responseCode = "200", description = "Event stream opened")
+    @ApiResponse(responseCode = "404", description = "Payment not found")
+    @ApiResponse(responseCode = "429", description = "Too many streams for this payment")
+    @ApiResponse(responseCode = "503", description = "Too many open streams")
+    public SseEmitter streamPaymentStatus(
+            @Parameter(description = "Payment ID")
+            @PathVariable String paymentId) {
+
+        log.debug("Opening status stream for payment: {}", paymentId);
+        return paymentService.subscribeToStatus(paymentId);
+    }
+
     // CHANGED: Remove userId path parameter - get from authenticated user
     @GetMapping("/my-payments")
     @Operation(
@@ -107,6 +135,25 @@ public class PaymentController {
         return ResponseEntity.ok(payments);
     }
 
+    @GetMapping("/my-payments/cursor")
+    @Operation(
+            summary = "Get current user's payment history (cursor pagination)",
+            description = "Newest first. Pass the returned nextCursor to get the following page; no total count is computed"
+    )
+    @ApiResponse(responseCode = "200", description = "Payment history page retrieved")
+    @ApiResponse(responseCode = "400", description = "Invalid cursor or page size")
+    @ApiResponse(responseCode = "401", description = "User not authenticated")
+    public ResponseEntity<PaymentCursorPageDTO> getCurrentUserPaymentsByCursor(
+            @Parameter(description = "Cursor from the previous page (omit for the first page)")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Number of items per page (max 100)")
+            @RequestParam(defaultValue = "10") int size) {
+
+        log.debug("Retrieving payment history for authenticated user (cursor: {}, size: {})", cursor, size);
+
+        return ResponseEntity.ok(paymentService.getUserPaymentsAfter(cursor, size));
+    }
+
     // OPTIONAL: Keep this for admin use only - add @PreAuthorize("hasRole('ADMIN')")
     @GetMapping("/user/{userId}")
     @Operation(
@@ -177,26 +224,40 @@ public class PaymentController {
         return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
     }
 
-    @PostMapping("/bulk-status")
+    @PostMapping(value = "/bulk-status", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(
             summary = "Check multiple payment statuses",
-            description = "Retrieves status for multiple payments in one request"
+            description = "Retrieves status, amount and last update for multiple payments in one request. " +
+                    "The JSON array is streamed chunk by chunk; unknown payment IDs are omitted."
     )
     @ApiResponse(responseCode = "200", description = "Payment statuses retrieved")
+    @ApiResponse(responseCode = "400", description = "Too many payment IDs")
     @ApiResponse(responseCode = "401", description = "User not authenticated")
-    public ResponseEntity<Page<PaymentResponseDTO>> getBulkPaymentStatus(
+    public ResponseEntity<StreamingResponseBody> getBulkPaymentStatus(
             @RequestBody @Parameter(description = "List of payment IDs")
-            java.util.List<String> paymentIds,
-            @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "50") int size) {
+            java.util.List<String> paymentIds) {
 
         log.debug("Bulk status check for {} payments", paymentIds.size());
 
-        // You'll need to implement this in your service
-        // Page<PaymentResponseDTO> payments = paymentService.getBulkPaymentStatus(paymentIds, PageRequest.of(page, size));
-        // return ResponseEntity.ok(payments);
-
-        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+        java.util.List<String> ids = paymentService.prepareStatusLookup(paymentIds);
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                paymentService.forEachStatusChunk(ids, chunk -> {
+                    try {
+                        for (PaymentStatusSummaryDTO summary : chunk) {
+                            generator.writeObject(summary);
+                        }
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
     @GetMapping("/health")
@@ -46,7 +46,7 @@ public class PayPalCallbackController {
                 paymentId, token, payerId);
 
         try {
-            // Capture the payment and update status
+            // Queue the capture; the page shows CAPTURING as "processing" and polls the status API
             PaymentResponseDTO payment = paymentService.handlePayPalSuccess(paymentId, token, payerId);
 
             // Redirect user to static success page
@@ -0,0 +1,52 @@
+package Projet.Microservice.Controllers;
+
+import Projet.Microservice.DTO.SessionRevocationRequestDTO;
+import Projet.Microservice.Security.SessionRevocationRegistry;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+
+@RestController
+@RequestMapping("/api/internal/session-revocations")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Internal", description = "Endpoints called by Keycloak extensions")
+public class SessionRevocationController {
+
+    private final SessionRevocationRegistry revocationRegistry;
+
+    @Value("${security.revocation.secret:}")
+    private String revocationSecret;
+
+    @PostMapping
+    @Operation(
+            summary = "Record revoked Keycloak sessions",
+            description = "Called by the one-session plugin whenever it terminates a user's older sessions"
+    )
+    public ResponseEntity<Void> revokeSessions(
+            @RequestHeader(value = "X-Revocation-Secret", required = false) String secret,
+            @Valid @RequestBody SessionRevocationRequestDTO request) {
+
+        if (revocationSecret.isEmpty() || secret == null ||
+                !MessageDigest.isEqual(revocationSecret.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("Rejected session revocation push for user {}", request.getUserId());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        Instant revokedAt = request.getRevokedAt() != null
+                ? Instant.ofEpochMilli(request.getRevokedAt())
+                : Instant.now();
+        revocationRegistry.revoke(request.getUserId(), request.getSessionIds(), revokedAt);
+        return ResponseEntity.accepted().build();
+    }
+}
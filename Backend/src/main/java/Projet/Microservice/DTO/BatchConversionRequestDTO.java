@@ -0,0 +1,31 @@
+package Projet.Microservice.DTO;
+
+import Projet.Microservice.Entities.Currency;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Either a list of items, or one amount/from converted to every currency in targets.
+ */
+@Data
+public class BatchConversionRequestDTO {
+
+    private List<Item> items;
+
+    private BigDecimal amount;
+    private Currency from;
+    private List<Currency> targets;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private BigDecimal amount;
+        private Currency from;
+        private Currency to;
+    }
+}
@@ -0,0 +1,29 @@
+package Projet.Microservice.DTO;
+
+import Projet.Microservice.Entities.Currency;
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+public class BatchConversionResponseDTO {
+
+    // Every result below was computed from this rate snapshot; equal versions mean equal rates
+    private long rateVersion;
+    private Instant ratesFetchedAt;
+    private List<Result> results;
+
+    @Data
+    @Builder
+    public static class Result {
+        private BigDecimal amount;
+        private Currency from;
+        private Currency to;
+        private BigDecimal rate;
+        private BigDecimal converted;
+    }
+}
@@ -0,0 +1,16 @@
+package Projet.Microservice.DTO;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class PaymentCursorPageDTO {
+
+    private List<PaymentHistoryItemDTO> items;
+    // Pass back as "cursor" to get the next page; null on the last page
+    private String nextCursor;
+    private boolean hasMore;
+}
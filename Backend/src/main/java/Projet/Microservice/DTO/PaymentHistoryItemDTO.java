@@ -0,0 +1,35 @@
+package Projet.Microservice.DTO;
+
+import Projet.Microservice.Entities.Currency;
+import Projet.Microservice.Entities.PaymentMethod;
+import Projet.Microservice.Entities.PaymentStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// Payment history row selected straight from PaymentRepository (JPQL constructor expression)
+@Data
+@AllArgsConstructor
+public class PaymentHistoryItemDTO {
+
+    // Only used to build the next-page cursor
+    @JsonIgnore
+    private Long id;
+
+    private String paymentId;
+    private String bookingId;
+    private BigDecimal amount;
+    private Currency currency;
+    private PaymentMethod paymentMethod;
+    private PaymentStatus paymentStatus;
+    private String description;
+    private String failureReason;
+    private Instant processedAt;
+    private Instant expiresAt;
+    private BigDecimal amountInUSD;
+    private Instant createdAt;
+    private Instant updatedAt;
+}
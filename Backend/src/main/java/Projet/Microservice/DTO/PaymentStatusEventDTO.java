@@ -0,0 +1,20 @@
+package Projet.Microservice.DTO;
+
+import Projet.Microservice.Entities.PaymentStatus;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+// Published inside the transaction of every status transition: written to the Kafka outbox (PaymentOutbox)
+// and, after commit, pushed to /api/payments/{paymentId}/events
+@Data
+@Builder
+public class PaymentStatusEventDTO {
+
+    private String paymentId;
+    private String bookingId;
+    private PaymentStatus status;
+    private String failureReason;
+    private Instant occurredAt;
+}
@@ -0,0 +1,21 @@
+package Projet.Microservice.DTO;
+
+import Projet.Microservice.Entities.Currency;
+import Projet.Microservice.Entities.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// Lightweight row for bulk status lookups, selected directly by PaymentRepository (no entity loaded)
+@Data
+@AllArgsConstructor
+public class PaymentStatusSummaryDTO {
+
+    private String paymentId;
+    private PaymentStatus paymentStatus;
+    private BigDecimal amount;
+    private Currency currency;
+    private Instant updatedAt;
+}
@@ -0,0 +1,20 @@
+package Projet.Microservice.DTO;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SessionRevocationRequestDTO {
+
+    private String realm;
+
+    @NotBlank
+    private String userId;
+
+    private List<String> sessionIds;
+
+    // Epoch millis on the Keycloak side
+    private Long revokedAt;
+}
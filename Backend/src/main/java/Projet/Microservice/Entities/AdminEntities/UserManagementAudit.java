@@ -15,7 +15,7 @@ import java.time.LocalDateTime;
 public class UserManagementAudit {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Long id;
 
     // The user affected
@@ -16,8 +16,10 @@ import java.time.Instant;
 @Setter
 public abstract class BaseEntity {
 
+    // One pooled sequence per entity (<entity>_seq, increment 50): IDs are assigned before the INSERT,
+    // so Hibernate can batch inserts, and only one nextval is needed per 50 rows
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Long id;
 
     @CreatedDate
@@ -0,0 +1,46 @@
+package Projet.Microservice.Entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Append-only daily quote: the rate from baseCurrency to currency that applied on rateDate (UTC).
+ * The first quote recorded for a day is kept; rows are never updated.
+ */
+@Entity
+@Table(name = "exchange_rate_history",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_exchange_rate_history_day",
+                columnNames = {"rate_date", "base_currency", "currency"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExchangeRateHistory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "rate_date", nullable = false)
+    private LocalDate rateDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "base_currency", nullable = false, length = 3)
+    private Currency baseCurrency;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "currency", nullable = false, length = 3)
+    private Currency currency;
+
+    @Column(name = "rate", nullable = false, precision = 19, scale = 10)
+    private BigDecimal rate;
+
+    @Column(name = "recorded_at", nullable = false)
+    private Instant recordedAt;
+}
@@ -9,7 +9,10 @@ import java.time.Instant;
 import java.util.List;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        // Keyset pagination of a user's history (PaymentRepository.findHistory*)
+        @Index(name = "idx_payments_user_created", columnList = "user_id, created_at DESC, id DESC")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -60,6 +63,13 @@ public class Payment extends BaseEntity {
     @Column(name = "amount_in_usd", precision = 10, scale = 2)
     private BigDecimal amountInUSD;
 
+    // Rate amountInUSD was computed with, and when that rate was fetched (null for USD payments)
+    @Column(name = "usd_rate", precision = 19, scale = 10)
+    private BigDecimal usdRate;
+
+    @Column(name = "usd_rate_fetched_at")
+    private Instant usdRateFetchedAt;
+
     @OneToMany(mappedBy = "payment", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Refund> refunds;
 
@@ -0,0 +1,44 @@
+package Projet.Microservice.Entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Payment status change waiting to be published to Kafka (transactional outbox).
+ * Written in the same transaction as the change itself, deleted once the broker acknowledged it.
+ */
+@Entity
+@Table(name = "payment_outbox")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PaymentOutboxEvent {
+
+    // Publishing order. One nextval per row (no pooled blocks), taken while the status change
+    // holds the payment row lock, so a payment's ids follow the order its changes commit in
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payment_outbox_seq")
+    @SequenceGenerator(name = "payment_outbox_seq", sequenceName = "payment_outbox_seq", allocationSize = 1)
+    private Long id;
+
+    @Column(name = "payment_id", nullable = false)
+    private String paymentId;
+
+    // Kafka message key: all events of a booking go to the same partition, in order
+    @Column(name = "booking_id", nullable = false)
+    private String bookingId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private PaymentStatus status;
+
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
@@ -2,7 +2,9 @@ package Projet.Microservice.Entities;
 
 public enum PaymentStatus {
     CREATED,     // Payment record created, not yet initiated with provider
+    INITIATING,  // Reserved for initiation, provider order being created
     PENDING,     // Payment initiated with provider, awaiting user action
+    CAPTURING,   // Approved by the user, capture running in the background
     COMPLETED,   // Payment successfully completed
     FAILED,      // Payment failed
     CANCELLED,   // Payment cancelled by user
@@ -0,0 +1,7 @@
+package Projet.Microservice.Exceptions;
+
+public class ExchangeRateUnavailableException extends RuntimeException {
+    public ExchangeRateUnavailableException(String message) {
+        super(message);
+    }
+}
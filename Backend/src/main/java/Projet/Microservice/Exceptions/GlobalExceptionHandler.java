@@ -62,6 +62,14 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(ExchangeRateUnavailableException.class)
+    public ResponseEntity<Map<String, Object>> handleExchangeRateUnavailable(ExchangeRateUnavailableException ex) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", "EXCHANGE_RATES_UNAVAILABLE");
+        body.put("message", ex.getMessage());
+        return new ResponseEntity<>(body, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler(PayPalApiException.class)
     public ResponseEntity<Map<String, Object>> handlePayPalApi(PayPalApiException ex) {
         Map<String, Object> body = new HashMap<>();
@@ -0,0 +1,43 @@
+package Projet.Microservice.Repositories;
+
+import Projet.Microservice.Entities.Currency;
+import Projet.Microservice.Entities.ExchangeRateHistory;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ExchangeRateHistoryRepository extends JpaRepository<ExchangeRateHistory, Long> {
+
+    // First quote of the day wins; later refreshes on the same day are no-ops
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            INSERT INTO exchange_rate_history (rate_date, base_currency, currency, rate, recorded_at)
+            VALUES (:rateDate, :baseCurrency, :currency, :rate, :recordedAt)
+            ON CONFLICT (rate_date, base_currency, currency) DO NOTHING
+            """)
+    int insertIfAbsent(@Param("rateDate") LocalDate rateDate,
+                       @Param("baseCurrency") String baseCurrency,
+                       @Param("currency") String currency,
+                       @Param("rate") BigDecimal rate,
+                       @Param("recordedAt") Instant recordedAt);
+
+    // Latest day with quotes on or before :date (days without a refresh inherit the previous day)
+    @Query("SELECT MAX(h.rateDate) FROM ExchangeRateHistory h WHERE h.baseCurrency = :base AND h.rateDate <= :date")
+    Optional<LocalDate> findEffectiveDate(@Param("base") Currency base, @Param("date") LocalDate date);
+
+    List<ExchangeRateHistory> findByBaseCurrencyAndRateDate(Currency base, LocalDate rateDate);
+
+    List<ExchangeRateHistory> findByBaseCurrencyAndRateDateBetweenOrderByRateDate(
+            Currency base, LocalDate start, LocalDate end);
+}
@@ -0,0 +1,75 @@
+package Projet.Microservice.Repositories;
+
+import Projet.Microservice.Entities.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    @Query("SELECT r FROM IdempotencyRecord r WHERE r.keyHash = :keyHash AND r.completedAt IS NOT NULL AND r.expiresAt > :now")
+    Optional<IdempotencyRecord> findLive(@Param("keyHash") String keyHash, @Param("now") Instant now);
+
+    // Claims the key until :leaseUntil. Takes over a row whose lease or TTL has run out (owner gone,
+    // or response expired); returns 0 while another execution holds it or its response is live.
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            INSERT INTO idempotency_keys (key_hash, request_hash, created_at, expires_at)
+            VALUES (:keyHash, :requestHash, :now, :leaseUntil)
+            ON CONFLICT (key_hash) DO UPDATE
+                SET request_hash = EXCLUDED.request_hash, status_code = NULL, content_type = NULL, body = NULL,
+                    created_at = EXCLUDED.created_at, expires_at = EXCLUDED.expires_at, completed_at = NULL
+                WHERE idempotency_keys.expires_at <= :now
+            """)
+    int claim(@Param("keyHash") String keyHash, @Param("requestHash") String requestHash,
+              @Param("now") Instant now, @Param("leaseUntil") Instant leaseUntil);
+
+    // Stores the response on the caller's claim; 0 when the claim is gone (lease lost or never written)
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            UPDATE idempotency_keys
+            SET status_code = :#{#record.statusCode}, content_type = :#{#record.contentType}, body = :#{#record.body},
+                completed_at = :#{#record.completedAt}, expires_at = :#{#record.expiresAt}
+            WHERE key_hash = :#{#record.keyHash} AND request_hash = :#{#record.requestHash} AND completed_at IS NULL
+            """)
+    int completeClaim(@Param("record") IdempotencyRecord record);
+
+    // First response wins when two instances finish the same key concurrently
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            INSERT INTO idempotency_keys (key_hash, request_hash, status_code, content_type, body, created_at,
+                                          expires_at, completed_at)
+            VALUES (:#{#record.keyHash}, :#{#record.requestHash}, :#{#record.statusCode}, :#{#record.contentType},
+                    :#{#record.body}, :#{#record.createdAt}, :#{#record.expiresAt}, :#{#record.completedAt})
+            ON CONFLICT (key_hash) DO NOTHING
+            """)
+    int insertIfAbsent(@Param("record") IdempotencyRecord record);
+
+    // Drops an unfinished claim so the next retry can run the request
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = "DELETE FROM idempotency_keys WHERE key_hash = :keyHash AND completed_at IS NULL")
+    int deleteClaim(@Param("keyHash") String keyHash);
+
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            DELETE FROM idempotency_keys
+            WHERE key_hash IN (
+                SELECT key_hash FROM idempotency_keys
+                WHERE expires_at < :now
+                LIMIT :batchSize
+            )
+            """)
+    int deleteExpired(@Param("now") Instant now, @Param("batchSize") int batchSize);
+}
@@ -0,0 +1,32 @@
+package Projet.Microservice.Repositories;
+
+import Projet.Microservice.Entities.PaymentOutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface PaymentOutboxRepository extends JpaRepository<PaymentOutboxEvent, Long> {
+
+    // Held until the calling transaction ends; a second relay gets false and skips its run, so only
+    // one instance publishes at a time. Order within a payment comes from the ids themselves
+    // (see PaymentOutboxEvent.id)
+    @Query(nativeQuery = true, value = "SELECT pg_try_advisory_xact_lock(hashtext('payment_outbox_relay'))")
+    boolean tryRelayLock();
+
+    List<PaymentOutboxEvent> findAllByOrderByIdAsc(Pageable pageable);
+
+    @Query(nativeQuery = true, value = """
+            SELECT count(*) AS "pending", min(created_at) AS "oldestCreatedAt" FROM payment_outbox
+            """)
+    Backlog findBacklog();
+
+    interface Backlog {
+        long getPending();
+        Instant getOldestCreatedAt();
+    }
+}
@@ -1,5 +1,7 @@
 package Projet.Microservice.Repositories;
 
+import Projet.Microservice.DTO.PaymentHistoryItemDTO;
+import Projet.Microservice.DTO.PaymentStatusSummaryDTO;
 import Projet.Microservice.Entities.Payment;
 import Projet.Microservice.Entities.PaymentStatus;
 import Projet.Microservice.Entities.PaymentMethod;
@@ -7,9 +9,12 @@ import Projet.Microservice.Entities.Currency;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.Collection;
@@ -19,8 +24,31 @@ import java.util.Optional;
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
 
+    @Query("SELECT new Projet.Microservice.DTO.PaymentStatusSummaryDTO(p.paymentId, p.paymentStatus, p.amount, p.currency, p.updatedAt) " +
+            "FROM Payment p WHERE p.paymentId IN :paymentIds")
+    List<PaymentStatusSummaryDTO> findStatusSummaries(@Param("paymentIds") Collection<String> paymentIds);
+
+    // Inserts a new payment in one statement. Returns empty instead of failing when the row would
+    // violate any unique constraint: booking_id, uk_payments_user_open (one open payment per user)
+    // or payment_id; the caller tells them apart.
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            INSERT INTO payments (payment_id, booking_id, user_id, amount, currency, payment_method, payment_status,
+                                  description, expires_at, amount_in_usd, usd_rate, usd_rate_fetched_at,
+                                  created_at, updated_at, created_by, updated_by)
+            VALUES (:#{#payment.paymentId}, :#{#payment.bookingId}, :#{#payment.user.id}, :#{#payment.amount},
+                    :#{#payment.currency.name()}, :#{#payment.paymentMethod.name()}, :#{#payment.paymentStatus.name()},
+                    :#{#payment.description}, :#{#payment.expiresAt}, :#{#payment.amountInUSD},
+                    :#{#payment.usdRate}, :#{#payment.usdRateFetchedAt},
+                    :#{#payment.createdAt}, :#{#payment.updatedAt}, :#{#payment.createdBy}, :#{#payment.updatedBy})
+            ON CONFLICT DO NOTHING
+            RETURNING id
+            """)
+    Optional<Long> insertIfNoConflict(@Param("payment") Payment payment);
+
     // Booking queries
     boolean existsByBookingId(String bookingId);
+    boolean existsByPaymentId(String paymentId);
     Optional<Payment> findByPaymentId(String paymentId);
     List<Payment> findByBookingId(String bookingId);
 
@@ -33,6 +61,21 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     Page<Payment> findByUser_IdOrderByCreatedAtDesc(Long userId, Pageable pageable);
     boolean existsByUser_IdAndPaymentStatusIn(Long userId, Collection<PaymentStatus> paymentStatus);
 
+    // Keyset pagination on (created_at, id), served by idx_payments_user_created
+    String HISTORY_ITEM_SELECT = "SELECT new Projet.Microservice.DTO.PaymentHistoryItemDTO(p.id, p.paymentId, p.bookingId, " +
+            "p.amount, p.currency, p.paymentMethod, p.paymentStatus, p.description, p.failureReason, p.processedAt, " +
+            "p.expiresAt, p.amountInUSD, p.createdAt, p.updatedAt) FROM Payment p ";
+
+    @Query(HISTORY_ITEM_SELECT + "WHERE p.user.id = :userId ORDER BY p.createdAt DESC, p.id DESC LIMIT :limit")
+    List<PaymentHistoryItemDTO> findHistoryFirstPage(@Param("userId") Long userId, @Param("limit") int limit);
+
+    @Query(HISTORY_ITEM_SELECT + "WHERE p.user.id = :userId AND (p.createdAt, p.id) < (:createdAt, :id) " +
+            "ORDER BY p.createdAt DESC, p.id DESC LIMIT :limit")
+    List<PaymentHistoryItemDTO> findHistoryPageAfter(@Param("userId") Long userId,
+                                                     @Param("createdAt") Instant createdAt,
+                                                     @Param("id") Long id,
+                                                     @Param("limit") int limit);
+
     @Query("SELECT COUNT(p) FROM Payment p WHERE p.user.id = :userId AND p.paymentStatus = :status")
     long countByUserIdAndStatus(@Param("userId") Long userId, @Param("status") PaymentStatus status);
 
@@ -72,4 +115,144 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
 
     @Query("SELECT p FROM Payment p WHERE p.expiresAt < :now AND p.paymentStatus = :status")
     List<Payment> findExpiredPayments(@Param("now") Instant now, @Param("status") PaymentStatus status);
+
+    // ======== Conditional status transitions ========
+    // Each one is a short transaction of its own; 0 means the payment was not in the expected status.
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.paymentStatus = :to, p.updatedAt = :now WHERE p.paymentId = :paymentId AND p.paymentStatus = :from")
+    int transitionStatus(@Param("paymentId") String paymentId,
+                         @Param("from") PaymentStatus from,
+                         @Param("to") PaymentStatus to,
+                         @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.paymentStatus = :to, p.providerTransactionId = :providerTransactionId, p.updatedAt = :now " +
+            "WHERE p.paymentId = :paymentId AND p.paymentStatus = :from")
+    int transitionStatusWithProviderId(@Param("paymentId") String paymentId,
+                                       @Param("from") PaymentStatus from,
+                                       @Param("to") PaymentStatus to,
+                                       @Param("providerTransactionId") String providerTransactionId,
+                                       @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.paymentStatus = Projet.Microservice.Entities.PaymentStatus.CAPTURING, " +
+            "p.paymentToken = :token, p.updatedAt = :now " +
+            "WHERE p.paymentId = :paymentId AND p.paymentStatus = Projet.Microservice.Entities.PaymentStatus.PENDING")
+    int claimForCapture(@Param("paymentId") String paymentId,
+                        @Param("token") String token,
+                        @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.paymentStatus = :to, p.processedAt = :processedAt, p.failureReason = :failureReason, " +
+            "p.updatedAt = :now " +
+            "WHERE p.paymentId = :paymentId AND p.paymentStatus = Projet.Microservice.Entities.PaymentStatus.CAPTURING")
+    int finishCapture(@Param("paymentId") String paymentId,
+                      @Param("to") PaymentStatus to,
+                      @Param("failureReason") String failureReason,
+                      @Param("processedAt") Instant processedAt,
+                      @Param("now") Instant now);
+
+    // The buyer left PayPal without approving: only a payment that has not reached capture can be cancelled
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.paymentStatus = Projet.Microservice.Entities.PaymentStatus.CANCELLED, " +
+            "p.failureReason = :failureReason, p.updatedAt = :now " +
+            "WHERE p.paymentId = :paymentId AND p.paymentStatus IN " +
+            "(Projet.Microservice.Entities.PaymentStatus.CREATED, Projet.Microservice.Entities.PaymentStatus.PENDING)")
+    int cancelOpenPayment(@Param("paymentId") String paymentId,
+                          @Param("failureReason") String failureReason,
+                          @Param("now") Instant now);
+
+    // Re-claims a capture whose worker died; the updated_at check lets only one instance resubmit it
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.updatedAt = :now " +
+            "WHERE p.paymentId = :paymentId AND p.paymentStatus = Projet.Microservice.Entities.PaymentStatus.CAPTURING " +
+            "AND p.updatedAt < :stuckBefore")
+    int reclaimStuckCapture(@Param("paymentId") String paymentId,
+                            @Param("stuckBefore") Instant stuckBefore,
+                            @Param("now") Instant now);
+
+    List<Payment> findByPaymentStatusAndUpdatedAtBefore(PaymentStatus status, Instant updatedBefore);
+
+    // Releases payments left in :from since before :stuckBefore (the instance died mid-step) and
+    // returns them, so the caller can publish their status change in the same transaction
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            UPDATE payments
+            SET payment_status = :#{#to.name()},
+                updated_at = :now
+            WHERE payment_status = :#{#from.name()}
+              AND updated_at < :stuckBefore
+            RETURNING payment_id AS "paymentId", booking_id AS "bookingId"
+            """)
+    List<ReleasedPayment> releaseStuckPayments(@Param("from") PaymentStatus from,
+                                               @Param("to") PaymentStatus to,
+                                               @Param("stuckBefore") Instant stuckBefore,
+                                               @Param("now") Instant now);
+
+    // Expires at most :batchSize open payments whose expires_at has passed, in one statement.
+    // SKIP LOCKED leaves rows currently held by a capture / initiation to the next run.
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            UPDATE payments
+            SET payment_status = 'EXPIRED',
+                failure_reason = :reason,
+                updated_at = :now
+            WHERE id IN (
+                SELECT id FROM payments
+                WHERE payment_status IN ('CREATED', 'PENDING')
+                  AND expires_at < :now
+                ORDER BY id
+                LIMIT :batchSize
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING payment_id AS "paymentId", booking_id AS "bookingId"
+            """)
+    List<ExpiredPayment> expireDuePayments(@Param("now") Instant now,
+                                   @Param("reason") String reason,
+                                   @Param("batchSize") int batchSize);
+
+    // Deletes the next chunk of EXPIRED payments (id > :afterId) together with their refunds.
+    // Keyset on id, so each chunk starts after the previous one instead of rescanning dead rows.
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            WITH chunk AS (
+                SELECT id FROM payments
+                WHERE payment_status = 'EXPIRED'
+                  AND created_at < :threshold
+                  AND id > :afterId
+                ORDER BY id
+                LIMIT :chunkSize
+            ), purged_refunds AS (
+                DELETE FROM refunds WHERE payment_id IN (SELECT id FROM chunk)
+            ), purged AS (
+                DELETE FROM payments WHERE id IN (SELECT id FROM chunk)
+                RETURNING id
+            )
+            SELECT count(*) AS "purged", max(id) AS "lastId" FROM purged
+            """)
+    PurgedChunk purgeExpiredChunk(@Param("threshold") Instant threshold,
+                                  @Param("afterId") long afterId,
+                                  @Param("chunkSize") int chunkSize);
+
+    interface ExpiredPayment {
+        String getPaymentId();
+        String getBookingId();
+    }
+
+    interface ReleasedPayment {
+        String getPaymentId();
+        String getBookingId();
+    }
+
+    interface PurgedChunk {
+        long getPurged();
+        Long getLastId();
+    }
 }
\ No newline at end of file
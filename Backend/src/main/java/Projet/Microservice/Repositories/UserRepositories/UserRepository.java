@@ -2,8 +2,14 @@ package Projet.Microservice.Repositories.UserRepositories;
 
 import Projet.Microservice.Entities.UserEntities.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Repository
@@ -15,4 +21,71 @@ public interface UserRepository extends JpaRepository<UserEntity, Long> {
     boolean existsByEmail(String email);
     boolean existsByReferralCode(String referralCode);
 
-}
\ No newline at end of file
+    // ======== Atomic balance mutations ========
+    // Each one is a single statement: the row is updated in place (no read-modify-write)
+    // and the audit entry is inserted from the UPDATE's RETURNING values.
+
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            WITH updated AS (
+                UPDATE users
+                SET balance = balance + :amount,
+                    withdrawable_balance = withdrawable_balance + :amount
+                WHERE id = :userId
+                RETURNING id, balance, withdrawable_balance
+            ), audit AS (
+                INSERT INTO user_management_audit (user_id, admin_id, action, details, "timestamp")
+                SELECT id, :adminId, 'CREDIT',
+                       'Credited ' || :amount
+                           || ' | Previous balance: ' || (balance - :amount)
+                           || ' | New balance: ' || balance
+                           || ' | Previous withdrawable: ' || (withdrawable_balance - :amount)
+                           || ' | New withdrawable: ' || withdrawable_balance,
+                       :timestamp
+                FROM updated
+            )
+            SELECT balance, withdrawable_balance AS "withdrawableBalance" FROM updated
+            """)
+    Optional<BalanceSnapshot> creditBalanceWithAudit(@Param("userId") Long userId,
+                                                     @Param("amount") BigDecimal amount,
+                                                     @Param("adminId") Long adminId,
+                                                     @Param("timestamp") LocalDateTime timestamp);
+
+    // Empty result: the user does not exist or its withdrawable balance is below the amount
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            WITH updated AS (
+                UPDATE users
+                SET balance = balance - :amount,
+                    withdrawable_balance = withdrawable_balance - :amount
+                WHERE id = :userId AND withdrawable_balance >= :amount
+                RETURNING id, balance, withdrawable_balance
+            ), audit AS (
+                INSERT INTO user_management_audit (user_id, admin_id, action, details, "timestamp")
+                SELECT id, :adminId, 'DEBIT',
+                       'Debited ' || :amount
+                           || ' | Previous balance: ' || (balance + :amount)
+                           || ' | New balance: ' || balance
+                           || ' | Previous withdrawable: ' || (withdrawable_balance + :amount)
+                           || ' | New withdrawable: ' || withdrawable_balance,
+                       :timestamp
+                FROM updated
+            )
+            SELECT balance, withdrawable_balance AS "withdrawableBalance" FROM updated
+            """)
+    Optional<BalanceSnapshot> debitBalanceWithAudit(@Param("userId") Long userId,
+                                                    @Param("amount") BigDecimal amount,
+                                                    @Param("adminId") Long adminId,
+                                                    @Param("timestamp") LocalDateTime timestamp);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE UserEntity u SET u.balance = u.balance + :amount, " +
+            "u.withdrawableBalance = u.withdrawableBalance + :amount WHERE u.id = :userId")
+    int addToBalance(@Param("userId") Long userId, @Param("amount") BigDecimal amount);
+
+    interface BalanceSnapshot {
+        BigDecimal getBalance();
+        BigDecimal getWithdrawableBalance();
+    }
+}
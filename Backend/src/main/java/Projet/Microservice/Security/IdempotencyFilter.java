@@ -0,0 +1,280 @@
+package Projet.Microservice.Security;
+
+import Projet.Microservice.Security.IdempotencyStore.StoredResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Idempotency-Key handling for payment creation and initiation.
+ *
+ * The first request with a given key (per caller and endpoint) runs normally and its response
+ * is saved; retries get that response back byte for byte, flagged with Idempotent-Replayed.
+ * A retry arriving while the first request is still running waits for it (up to in-flight-wait),
+ * on this instance through the store's in-flight executions, on another one by polling the key's
+ * database claim every in-flight-poll.
+ * Server errors are not saved, so the next retry executes again. Reusing a key with a different
+ * body is rejected with 422.
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final String STILL_PROCESSING = "A request with this Idempotency-Key is still being processed";
+    private static final List<String> IDEMPOTENT_ENDPOINTS = List.of(
+            "/api/payments",
+            "/api/payments/*/initiate");
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final IdempotencyStore store;
+    private final Duration inFlightWait;
+    private final Duration inFlightPoll;
+    private final Counter replays;
+    private final Counter coalesced;
+
+    public IdempotencyFilter(IdempotencyStore store,
+                             @Value("${idempotency.in-flight-wait:30s}") Duration inFlightWait,
+                             @Value("${idempotency.in-flight-poll:250ms}") Duration inFlightPoll,
+                             MeterRegistry meterRegistry) {
+        this.store = store;
+        this.inFlightWait = inFlightWait;
+        this.inFlightPoll = inFlightPoll;
+        this.replays = Counter.builder("idempotency.replays")
+                .description("Requests answered with a saved response")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("idempotency.coalesced")
+                .description("Requests that waited on an execution already in flight for the same key")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!HttpMethod.POST.matches(request.getMethod()) || request.getHeader(IDEMPOTENCY_KEY_HEADER) == null) {
+            return true;
+        }
+        String path = request.getServletPath();
+        return IDEMPOTENT_ENDPOINTS.stream().noneMatch(pattern -> pathMatcher.match(pattern, path));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String key = request.getHeader(IDEMPOTENCY_KEY_HEADER).trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST,
+                    "Idempotency-Key must be between 1 and " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+
+        byte[] body = request.getInputStream().readAllBytes();
+        String keyHash = sha256((callerOf() + "\n" + request.getMethod() + " " + request.getServletPath() + "\n" + key)
+                .getBytes(StandardCharsets.UTF_8));
+        String requestHash = sha256(body);
+        long deadline = System.nanoTime() + inFlightWait.toNanos();
+
+        while (true) {
+            StoredResponse saved = store.find(keyHash);
+            if (saved != null) {
+                replay(saved, requestHash, response);
+                return;
+            }
+
+            CompletableFuture<StoredResponse> running = store.begin(keyHash);
+            if (running == null) {
+                // The previous owner may have finished between find() and begin()
+                saved = store.find(keyHash);
+                if (saved != null) {
+                    store.release(keyHash, saved);
+                    replay(saved, requestHash, response);
+                    return;
+                }
+                if (store.claim(keyHash, requestHash)) {
+                    execute(request, body, response, filterChain, keyHash, requestHash);
+                    return;
+                }
+                // Running on another instance: hand local duplicates back to the loop and poll
+                store.release(keyHash, null);
+                if (!pause(deadline)) {
+                    writeError(response, HttpServletResponse.SC_CONFLICT, STILL_PROCESSING);
+                    return;
+                }
+                continue;
+            }
+
+            coalesced.increment();
+            StoredResponse first;
+            try {
+                first = running.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                writeError(response, HttpServletResponse.SC_CONFLICT, STILL_PROCESSING);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writeError(response, HttpServletResponse.SC_CONFLICT, STILL_PROCESSING);
+                return;
+            }
+            if (first != null) {
+                replay(first, requestHash, response);
+                return;
+            }
+            // The first execution ended with a server error and was not saved: take over the key
+        }
+    }
+
+    private void execute(HttpServletRequest request, byte[] body, HttpServletResponse response,
+                         FilterChain filterChain, String keyHash, String requestHash) throws ServletException, IOException {
+        ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(response);
+        StoredResponse result = null;
+        try {
+            filterChain.doFilter(new BufferedBodyRequest(request, body), cachingResponse);
+            if (cachingResponse.getStatus() < 500) {
+                result = new StoredResponse(requestHash, cachingResponse.getStatus(),
+                        cachingResponse.getContentType(), cachingResponse.getContentAsByteArray());
+            }
+        } finally {
+            store.complete(keyHash, result);
+        }
+        cachingResponse.copyBodyToResponse();
+    }
+
+    // Waits before looking at the key again; false once in-flight-wait is used up
+    private boolean pause(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return false;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(Math.min(remaining, inFlightPoll.toNanos()));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void replay(StoredResponse saved, String requestHash, HttpServletResponse response) throws IOException {
+        if (!saved.requestHash().equals(requestHash)) {
+            writeError(response, 422, "Idempotency-Key was already used with a different request body");
+            return;
+        }
+        replays.increment();
+        response.setStatus(saved.status());
+        if (saved.contentType() != null) {
+            response.setContentType(saved.contentType());
+        }
+        response.setHeader(REPLAYED_HEADER, "true");
+        response.setContentLength(saved.body().length);
+        response.getOutputStream().write(saved.body());
+    }
+
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+
+    // Keys are scoped to the caller so two users cannot collide on (or read) each other's responses
+    private String callerOf() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated() ? authentication.getName() : "anonymous";
+    }
+
+    private static String sha256(byte[] value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // The body is read up front to fingerprint it, then served again to the controller
+    private static class BufferedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        BufferedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                // The whole body is already in memory, so it is available (and complete) right away
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    try {
+                        readListener.onDataAvailable();
+                        if (isFinished()) {
+                            readListener.onAllDataRead();
+                        }
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            Charset charset = getCharacterEncoding() != null
+                    ? Charset.forName(getCharacterEncoding())
+                    : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
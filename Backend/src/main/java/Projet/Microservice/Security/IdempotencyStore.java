@@ -0,0 +1,196 @@
+package Projet.Microservice.Security;
+
+import Projet.Microservice.Entities.IdempotencyRecord;
+import Projet.Microservice.Repositories.IdempotencyRecordRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saved responses for Idempotency-Key requests.
+ *
+ * Lookups hit a size-bounded in-memory cache first and fall back to the idempotency_keys
+ * table, so a key is honoured across restarts and instances for the configured TTL.
+ * Executions in progress are tracked per key: a duplicate arriving on this instance waits on the
+ * first one instead of running the request again. Across instances the key is claimed in the
+ * table first ({@link #claim}); the claim is a lease, so a crashed owner frees the key after
+ * in-flight-lease.
+ * Hit ratios are exposed as cache.*{cache=idempotency.responses}.
+ */
+@Component
+@Slf4j
+public class IdempotencyStore {
+
+    private final IdempotencyRecordRepository repository;
+    private final Cache<String, StoredResponse> responses;
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Duration inFlightLease;
+    private final int cleanupBatchSize;
+
+    public IdempotencyStore(IdempotencyRecordRepository repository,
+                            @Value("${idempotency.ttl:24h}") Duration ttl,
+                            @Value("${idempotency.in-flight-lease:2m}") Duration inFlightLease,
+                            @Value("${idempotency.cache.max-size:10000}") long maxSize,
+                            @Value("${idempotency.cleanup.batch-size:1000}") int cleanupBatchSize,
+                            MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.ttl = ttl;
+        this.inFlightLease = inFlightLease;
+        this.cleanupBatchSize = cleanupBatchSize;
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, responses, "idempotency.responses");
+        Gauge.builder("idempotency.in-flight", inFlight, Map::size)
+                .description("Idempotency keys whose first request is still executing")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the saved response, or null when the key was never completed (or has expired)
+     */
+    public StoredResponse find(String keyHash) {
+        StoredResponse cached = responses.getIfPresent(keyHash);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            StoredResponse stored = repository.findLive(keyHash, Instant.now())
+                    .map(StoredResponse::of)
+                    .orElse(null);
+            if (stored != null) {
+                responses.put(keyHash, stored);
+            }
+            return stored;
+        } catch (DataAccessException e) {
+            log.warn("Idempotency lookup failed for key {}: {}", keyHash, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Registers the caller as the one executing the key.
+     *
+     * @return null when the caller now owns the key (and must call {@link #complete}),
+     * otherwise the execution already in progress
+     */
+    public CompletableFuture<StoredResponse> begin(String keyHash) {
+        return inFlight.putIfAbsent(keyHash, new CompletableFuture<>());
+    }
+
+    /**
+     * Claims the key in the database for the owner returned by {@link #begin}.
+     *
+     * @return false while an execution on another instance holds the key (or its response
+     * was just saved); the caller must release the key and look again later
+     */
+    public boolean claim(String keyHash, String requestHash) {
+        Instant now = Instant.now();
+        try {
+            return repository.claim(keyHash, requestHash, now, now.plus(inFlightLease)) > 0;
+        } catch (DataAccessException e) {
+            // Same degradation as find(): duplicates are still coalesced on this instance
+            log.warn("Could not claim idempotency key {}: {}", keyHash, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Ends the caller's execution. A null response (server error) is not saved and the claim is
+     * dropped, so the next retry runs the request again; waiting duplicates are released either way.
+     */
+    public void complete(String keyHash, StoredResponse response) {
+        try {
+            if (response != null) {
+                save(keyHash, response);
+            } else {
+                dropClaim(keyHash);
+            }
+        } finally {
+            release(keyHash, response);
+        }
+    }
+
+    /**
+     * Gives up ownership of the key without saving anything, handing the response to waiting duplicates.
+     */
+    public void release(String keyHash, StoredResponse response) {
+        CompletableFuture<StoredResponse> execution = inFlight.remove(keyHash);
+        if (execution != null) {
+            execution.complete(response);
+        }
+    }
+
+    private void save(String keyHash, StoredResponse response) {
+        responses.put(keyHash, response);
+        Instant now = Instant.now();
+        IdempotencyRecord record = IdempotencyRecord.builder()
+                .keyHash(keyHash)
+                .requestHash(response.requestHash())
+                .statusCode(response.status())
+                .contentType(response.contentType())
+                .body(response.body())
+                .createdAt(now)
+                .expiresAt(now.plus(ttl))
+                .completedAt(now)
+                .build();
+        try {
+            // No claim to complete when claiming failed or the lease ran out meanwhile
+            if (repository.completeClaim(record) == 0) {
+                repository.insertIfAbsent(record);
+            }
+        } catch (DataAccessException e) {
+            // The response was already sent; retries on this instance are still served from memory
+            log.warn("Could not persist idempotent response for key {}: {}", keyHash, e.getMessage());
+        }
+    }
+
+    private void dropClaim(String keyHash) {
+        try {
+            repository.deleteClaim(keyHash);
+        } catch (DataAccessException e) {
+            // The claim then blocks other instances until its lease runs out
+            log.warn("Could not release idempotency key {}: {}", keyHash, e.getMessage());
+        }
+    }
+
+    // Expired rows are deleted in small batches so the job never holds long locks (interval in ms)
+    @Scheduled(fixedDelayString = "${idempotency.cleanup.interval:3600000}")
+    public void deleteExpired() {
+        Instant now = Instant.now();
+        int deleted = 0;
+        int batch;
+        do {
+            batch = repository.deleteExpired(now, cleanupBatchSize);
+            deleted += batch;
+        } while (batch == cleanupBatchSize);
+
+        if (deleted > 0) {
+            log.info("Deleted {} expired idempotency key(s)", deleted);
+        }
+    }
+
+    public record StoredResponse(String requestHash, int status, String contentType, byte[] body) {
+
+        static StoredResponse of(IdempotencyRecord record) {
+            return new StoredResponse(record.getRequestHash(), record.getStatusCode(),
+                    record.getContentType(), record.getBody());
+        }
+    }
+}
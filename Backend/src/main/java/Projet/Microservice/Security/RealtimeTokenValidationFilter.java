@@ -1,11 +1,24 @@
 package Projet.Microservice.Security;
 
+import Projet.Microservice.Security.TokenIntrospectionCache.Introspection;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
 import org.springframework.stereotype.Component;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -14,8 +27,11 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class RealtimeTokenValidationFilter extends OncePerRequestFilter {
@@ -32,8 +48,55 @@ public class RealtimeTokenValidationFilter extends OncePerRequestFilter {
     @Value("${keycloak.backend.client-secret}")
     private String backendClientSecret;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // When enabled, tokens are verified against the realm keys and the revocation feed
+    // instead of being introspected on every request
+    @Value("${security.token-validation.local-verification:false}")
+    private boolean localVerification;
+
+    // What to do when Keycloak cannot answer (I/O error, timeout, 5xx or circuit breaker open);
+    // any other failure rejects the token
+    @Value("${security.introspection.fallback:LOCAL_JWT}")
+    private IntrospectionFallback introspectionFallback;
+
+    private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TokenIntrospectionCache introspectionCache;
+    private final SessionRevocationRegistry revocationRegistry;
+    // Resolved lazily: the decoder is declared in SecurityConfig, which depends on this filter
+    private final ObjectProvider<JwtDecoder> jwtDecoder;
+    private final CircuitBreaker introspectionBreaker;
+
+    // Introspections currently running, keyed like the cache; concurrent requests carrying
+    // the same token wait on the first one instead of calling Keycloak again
+    private final Map<String, CompletableFuture<Boolean>> inFlightIntrospections = new ConcurrentHashMap<>();
+    private final Counter introspectionCalls;
+    private final Counter coalescedIntrospections;
+    private final Counter introspectionErrors;
+
+    public RealtimeTokenValidationFilter(@Qualifier("keycloakRestTemplate") RestTemplate restTemplate,
+                                         TokenIntrospectionCache introspectionCache,
+                                         SessionRevocationRegistry revocationRegistry,
+                                         ObjectProvider<JwtDecoder> jwtDecoder,
+                                         @Qualifier("keycloakIntrospectionCircuitBreaker") CircuitBreaker introspectionBreaker,
+                                         MeterRegistry meterRegistry) {
+        this.restTemplate = restTemplate;
+        this.introspectionCache = introspectionCache;
+        this.revocationRegistry = revocationRegistry;
+        this.jwtDecoder = jwtDecoder;
+        this.introspectionBreaker = introspectionBreaker;
+        this.introspectionCalls = Counter.builder("token.introspection.calls")
+                .description("Introspection requests sent to Keycloak")
+                .register(meterRegistry);
+        this.coalescedIntrospections = Counter.builder("token.introspection.coalesced")
+                .description("Validations that joined an introspection already in flight for the same token")
+                .register(meterRegistry);
+        this.introspectionErrors = Counter.builder("token.introspection.errors")
+                .description("Introspections that failed with something other than Keycloak being unavailable "
+                        + "(4xx, unreadable answer); the token is rejected")
+                .register(meterRegistry);
+        Gauge.builder("token.introspection.in-flight", inFlightIntrospections, Map::size)
+                .register(meterRegistry);
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
@@ -73,33 +136,116 @@ public class RealtimeTokenValidationFilter extends OncePerRequestFilter {
     }
 
     private boolean isTokenValid(String token) {
+        if (localVerification) {
+            return isTokenValidLocally(token);
+        }
+
+        String tokenKey = TokenIntrospectionCache.keyFor(token);
+        Introspection cached = introspectionCache.get(tokenKey);
+        if (cached != null) {
+            // The session may have been terminated since Keycloak answered
+            return cached.active()
+                    && !revocationRegistry.isRevoked(cached.sessionId(), cached.subject(), cached.issuedAt());
+        }
+
+        CompletableFuture<Boolean> introspection = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = inFlightIntrospections.putIfAbsent(tokenKey, introspection);
+        if (running != null) {
+            coalescedIntrospections.increment();
+            return running.join();
+        }
+
+        try {
+            boolean active = introspect(token, tokenKey);
+            introspection.complete(active);
+            return active;
+        } catch (RuntimeException | Error e) {
+            introspection.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightIntrospections.remove(tokenKey, introspection);
+        }
+    }
+
+    private boolean introspect(String token, String tokenKey) {
         try {
-            String introspectUrl = keycloakUrl + "/realms/" + realm + "/protocol/openid-connect/token/introspect";
+            // Fails fast with CallNotPermittedException while Keycloak is considered down
+            return introspectionBreaker.executeCallable(() -> introspectRemotely(token, tokenKey));
+        } catch (CallNotPermittedException e) {
+            logger.debug("Keycloak introspection circuit open, using fallback " + introspectionFallback);
+            return fallbackValidation(token);
+        } catch (ResourceAccessException | HttpServerErrorException e) {
+            // Keycloak unreachable, too slow or failing
+            logger.warn("Keycloak introspection unavailable, using fallback " + introspectionFallback + ": " + e.getMessage());
+            return fallbackValidation(token);
+        } catch (Exception e) {
+            // 4xx (e.g. wrong backend credentials) or an unreadable answer: Keycloak is up, so fail closed
+            introspectionErrors.increment();
+            logger.error("Token introspection failed, rejecting token", e);
+            return false;
+        }
+    }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+    private boolean introspectRemotely(String token, String tokenKey) throws IOException {
+        introspectionCalls.increment();
 
-            // Use backend client credentials for introspection
-            String credentials = backendClientId + ":" + backendClientSecret;
-            String encodedCredentials = Base64.getEncoder().encodeToString(credentials.getBytes());
-            headers.set("Authorization", "Basic " + encodedCredentials);
+        String introspectUrl = keycloakUrl + "/realms/" + realm + "/protocol/openid-connect/token/introspect";
 
-            MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
-            body.add("token", token);
-            body.add("token_type_hint", "access_token");
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
 
-            HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(body, headers);
-            ResponseEntity<String> response = restTemplate.postForEntity(introspectUrl, entity, String.class);
+        // Use backend client credentials for introspection
+        String credentials = backendClientId + ":" + backendClientSecret;
+        String encodedCredentials = Base64.getEncoder().encodeToString(credentials.getBytes());
+        headers.set("Authorization", "Basic " + encodedCredentials);
 
-            if (response.getStatusCode() == HttpStatus.OK) {
-                Map<String, Object> introspectionResult = objectMapper.readValue(response.getBody(), Map.class);
-                return Boolean.TRUE.equals(introspectionResult.get("active"));
-            }
+        MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
+        body.add("token", token);
+        body.add("token_type_hint", "access_token");
 
-            return false;
-        } catch (Exception e) {
-            logger.error("Token validation failed", e);
+        HttpEntity<MultiValueMap<String, String>> entity = new HttpEntity<>(body, headers);
+        ResponseEntity<String> response = restTemplate.postForEntity(introspectUrl, entity, String.class);
+
+        if (response.getStatusCode() == HttpStatus.OK) {
+            Map<String, Object> introspectionResult = objectMapper.readValue(response.getBody(), Map.class);
+            boolean active = Boolean.TRUE.equals(introspectionResult.get("active"));
+
+            // Never keep an entry longer than the token itself is valid
+            Instant expiresAt = epochSecondsClaim(introspectionResult, "exp");
+            introspectionCache.put(tokenKey, new Introspection(active,
+                    (String) introspectionResult.get("sid"),
+                    (String) introspectionResult.get("sub"),
+                    epochSecondsClaim(introspectionResult, "iat")), expiresAt);
+            return active;
+        }
+
+        return false;
+    }
+
+    private static Instant epochSecondsClaim(Map<String, Object> claims, String name) {
+        return claims.get(name) instanceof Number seconds ? Instant.ofEpochSecond(seconds.longValue()) : null;
+    }
+
+    private boolean fallbackValidation(String token) {
+        return switch (introspectionFallback) {
+            case LOCAL_JWT -> isTokenValidLocally(token);
+            case REJECT -> false;
+        };
+    }
+
+    private boolean isTokenValidLocally(String token) {
+        try {
+            // Signature, issuer and expiry are checked by the decoder
+            Jwt jwt = jwtDecoder.getObject().decode(token);
+            return !revocationRegistry.isRevoked(jwt.getClaimAsString("sid"), jwt.getSubject(), jwt.getIssuedAt());
+        } catch (JwtException e) {
+            logger.debug("Local token verification failed: " + e.getMessage());
             return false;
         }
     }
-}
\ No newline at end of file
+
+    public enum IntrospectionFallback {
+        LOCAL_JWT,  // signature + expiry through JwtDecoder, plus the revocation feed
+        REJECT      // treat the token as invalid (401)
+    }
+}
@@ -0,0 +1,71 @@
+package Projet.Microservice.Security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory set of Keycloak sessions that were terminated after their tokens were issued.
+ *
+ * Fed by the one-session plugin through {@code POST /api/internal/session-revocations}.
+ * Entries are kept for the retention window, which must be at least the realm's access
+ * token lifespan: after that every token of a revoked session has expired on its own.
+ */
+@Component
+@Slf4j
+public class SessionRevocationRegistry {
+
+    private final Map<String, Instant> revokedSessions = new ConcurrentHashMap<>();
+    private final Map<String, Instant> revokedUsers = new ConcurrentHashMap<>();
+    private final Duration retention;
+
+    public SessionRevocationRegistry(@Value("${security.revocation.retention:1h}") Duration retention,
+                                     MeterRegistry meterRegistry) {
+        this.retention = retention;
+        Gauge.builder("security.revoked.sessions", revokedSessions, Map::size)
+                .description("Revoked Keycloak sessions currently tracked")
+                .register(meterRegistry);
+    }
+
+    public void revoke(String userId, Collection<String> sessionIds, Instant revokedAt) {
+        if (sessionIds != null) {
+            sessionIds.forEach(sessionId -> revokedSessions.put(sessionId, revokedAt));
+        }
+        if (userId != null) {
+            revokedUsers.merge(userId, revokedAt, (previous, current) -> current.isAfter(previous) ? current : previous);
+        }
+        log.info("Recorded revocation of {} session(s) for user {}", sessionIds != null ? sessionIds.size() : 0, userId);
+    }
+
+    /**
+     * A token is revoked when its session was terminated, or when it was issued to the
+     * user before the last revocation (tokens without a "sid" claim).
+     */
+    public boolean isRevoked(String sessionId, String userId, Instant issuedAt) {
+        if (sessionId != null && revokedSessions.containsKey(sessionId)) {
+            return true;
+        }
+        if (sessionId == null && userId != null && issuedAt != null) {
+            Instant userRevokedAt = revokedUsers.get(userId);
+            // "iat" has second precision, so compare on whole seconds
+            return userRevokedAt != null && issuedAt.getEpochSecond() < userRevokedAt.getEpochSecond();
+        }
+        return false;
+    }
+
+    @Scheduled(fixedRate = 60_000)
+    public void purgeExpired() {
+        Instant threshold = Instant.now().minus(retention);
+        revokedSessions.values().removeIf(revokedAt -> revokedAt.isBefore(threshold));
+        revokedUsers.values().removeIf(revokedAt -> revokedAt.isBefore(threshold));
+    }
+}
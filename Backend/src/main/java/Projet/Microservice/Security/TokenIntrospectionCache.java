@@ -0,0 +1,103 @@
+package Projet.Microservice.Security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Short-lived cache of Keycloak introspection results.
+ *
+ * Entries are keyed by a SHA-256 hash of the bearer token (the raw token is never kept)
+ * and live for the configured TTL, capped by the token's own "exp" claim. The session, subject
+ * and issue time are kept with the result so a hit can still be checked against revocations.
+ * Hit / miss / eviction counters are published under "cache.*{cache=token.introspection}".
+ */
+@Component
+public class TokenIntrospectionCache {
+
+    private final Cache<String, CachedIntrospection> cache;
+    private final Duration ttl;
+
+    public TokenIntrospectionCache(@Value("${security.introspection.cache.ttl:30s}") Duration ttl,
+                                   @Value("${security.introspection.cache.max-size:10000}") long maxSize,
+                                   MeterRegistry meterRegistry) {
+        this.ttl = ttl;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, CachedIntrospection>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedIntrospection value, long currentTime) {
+                        return value.lifetimeNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedIntrospection value, long currentTime, long currentDuration) {
+                        return value.lifetimeNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedIntrospection value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "token.introspection");
+    }
+
+    /**
+     * @param tokenKey key computed with {@link #keyFor(String)}
+     * @return the cached result, or null when the token has not been introspected recently
+     */
+    public Introspection get(String tokenKey) {
+        CachedIntrospection entry = cache.getIfPresent(tokenKey);
+        return entry != null ? entry.introspection() : null;
+    }
+
+    /**
+     * @param expiresAt value of the token "exp" claim, or null when Keycloak did not return one
+     */
+    public void put(String tokenKey, Introspection introspection, Instant expiresAt) {
+        Duration lifetime = ttl;
+        if (expiresAt != null) {
+            Duration untilExpiry = Duration.between(Instant.now(), expiresAt);
+            if (untilExpiry.compareTo(lifetime) < 0) {
+                lifetime = untilExpiry;
+            }
+        }
+        if (lifetime.isNegative() || lifetime.isZero()) {
+            return;
+        }
+        cache.put(tokenKey, new CachedIntrospection(introspection, lifetime.toNanos()));
+    }
+
+    public static String keyFor(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hashed = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hashed);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @param sessionId "sid" claim, subject "sub" claim, issuedAt "iat" claim; any may be null
+     */
+    public record Introspection(boolean active, String sessionId, String subject, Instant issuedAt) {
+    }
+
+    private record CachedIntrospection(Introspection introspection, long lifetimeNanos) {
+    }
+}
@@ -1,47 +1,95 @@
 package Projet.Microservice.Services;
 
+import Projet.Microservice.DTO.BatchConversionRequestDTO;
+import Projet.Microservice.DTO.BatchConversionResponseDTO;
 import Projet.Microservice.Entities.Currency;
-import jakarta.annotation.PostConstruct;
+import Projet.Microservice.Services.CurrencyRates.ExchangeRateCache;
+import Projet.Microservice.Services.CurrencyRates.ExchangeRateHistoryService;
+import Projet.Microservice.Services.CurrencyRates.ExchangeRateSnapshot;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
-import java.util.Map;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 public class CurrencyConversionService {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final int AMOUNT_SCALE = 4;
 
-    @Value("${currency.api.key}")
-    private String apiKey;
+    private final ExchangeRateCache exchangeRateCache;
+    private final ExchangeRateHistoryService historyService;
+    private final int maxBatchSize;
 
-    @PostConstruct
-    public void init() {
-        System.out.println("Currency API Key: " + apiKey); // Make sure the key is injected
+    public CurrencyConversionService(ExchangeRateCache exchangeRateCache,
+                                     ExchangeRateHistoryService historyService,
+                                     @Value("${currency.convert.max-batch-size:200}") int maxBatchSize) {
+        this.exchangeRateCache = exchangeRateCache;
+        this.historyService = historyService;
+        this.maxBatchSize = maxBatchSize;
     }
 
+    // Served from the in-memory snapshot, no network call on the request path.
+    // Result is amount x rate rounded to 4 decimals (HALF_EVEN); callers round further to the column scale.
     public BigDecimal convert(BigDecimal amount, Currency from, Currency to) {
-        String fromCurrency = from.name();
-        String toCurrency = to.name();
+        return convert(exchangeRateCache.snapshot(), amount, from, to);
+    }
 
-        // Correct URL format for ExchangeRate-API
-        String url = "https://v6.exchangerate-api.com/v6/" + apiKey + "/latest/" + fromCurrency;
+    // Same as convert, plus the rate and snapshot it used, for callers that store them
+    public Conversion convertWithRate(BigDecimal amount, Currency from, Currency to) {
+        ExchangeRateSnapshot snapshot = exchangeRateCache.snapshot();
+        return new Conversion(convert(snapshot, amount, from, to), snapshot.rate(from, to), snapshot.getFetchedAt());
+    }
 
-        Map<String, Object> response = restTemplate.getForObject(url, Map.class);
+    // Uses the recorded daily rate for that instant: the same call always gives the same result
+    public BigDecimal convertAt(Instant at, BigDecimal amount, Currency from, Currency to) {
+        return convert(historyService.snapshotAt(at), amount, from, to);
+    }
 
-        if (response != null && "success".equals(response.get("result"))) {
-            Map<String, Double> rates = (Map<String, Double>) response.get("conversion_rates");
-            Double rate = rates.get(toCurrency);
+    // All items are resolved against the same snapshot, reported back as rateVersion
+    public BatchConversionResponseDTO convertBatch(List<BatchConversionRequestDTO.Item> items) {
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("At least one conversion is required");
+        }
+        if (items.size() > maxBatchSize) {
+            throw new IllegalArgumentException("A batch cannot contain more than " + maxBatchSize + " conversions");
+        }
 
-            if (rate == null) {
-                throw new RuntimeException("Target currency not found in API response");
+        ExchangeRateSnapshot snapshot = exchangeRateCache.snapshot();
+        List<BatchConversionResponseDTO.Result> results = new ArrayList<>(items.size());
+        for (BatchConversionRequestDTO.Item item : items) {
+            if (item == null || item.getAmount() == null || item.getFrom() == null || item.getTo() == null) {
+                throw new IllegalArgumentException("Each conversion needs amount, from and to");
             }
+            results.add(BatchConversionResponseDTO.Result.builder()
+                    .amount(item.getAmount())
+                    .from(item.getFrom())
+                    .to(item.getTo())
+                    .rate(snapshot.rate(item.getFrom(), item.getTo()))
+                    .converted(convert(snapshot, item.getAmount(), item.getFrom(), item.getTo()))
+                    .build());
+        }
+
+        return BatchConversionResponseDTO.builder()
+                .rateVersion(snapshot.getVersion())
+                .ratesFetchedAt(snapshot.getFetchedAt())
+                .results(results)
+                .build();
+    }
+
+    public record Conversion(BigDecimal amount, BigDecimal rate, Instant ratesFetchedAt) {
+    }
+
+    private BigDecimal convert(ExchangeRateSnapshot snapshot, BigDecimal amount, Currency from, Currency to) {
+        BigDecimal rate = snapshot.rate(from, to);
 
-            return amount.multiply(BigDecimal.valueOf(rate));
+        if (rate == null) {
+            throw new RuntimeException("Target currency not found in API response");
         }
 
-        throw new RuntimeException("Failed to fetch conversion rate");
+        return amount.multiply(rate).setScale(AMOUNT_SCALE, RoundingMode.HALF_EVEN);
     }
 }
@@ -0,0 +1,120 @@
+package Projet.Microservice.Services.CurrencyRates;
+
+import Projet.Microservice.Entities.Currency;
+import Projet.Microservice.Exceptions.ExchangeRateUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory exchange rates, refreshed in the background.
+ *
+ * Only the base currency table is fetched (one upstream call per refresh); cross rates are
+ * derived locally, see {@link ExchangeRateSnapshot}.
+ * Reads are a single volatile load of the current {@link ExchangeRateSnapshot}; the refresh
+ * job builds a complete new snapshot and swaps it in. When the upstream API fails the previous
+ * snapshot keeps being served until it is older than currency.rates.max-staleness. A failed
+ * refresh (including the start-up warm-up) is retried every currency.rates.retry-interval
+ * instead of waiting for the next regular refresh.
+ * Each successful refresh is also appended to the daily history ({@link ExchangeRateHistoryService}).
+ * Snapshot age is published as currency.rates.age, failed refreshes as currency.rates.refresh.failures.
+ */
+@Component
+@Slf4j
+public class ExchangeRateCache {
+
+    private final ExchangeRateClient client;
+    private final ExchangeRateHistoryService historyService;
+    private final Currency baseCurrency;
+    private final Duration maxStaleness;
+    private final AtomicReference<ExchangeRateSnapshot> current = new AtomicReference<>();
+    private final Counter refreshFailures;
+    private volatile boolean lastRefreshFailed;
+
+    public ExchangeRateCache(ExchangeRateClient client,
+                             ExchangeRateHistoryService historyService,
+                             @Value("${currency.rates.base:USD}") Currency baseCurrency,
+                             @Value("${currency.rates.max-staleness:6h}") Duration maxStaleness,
+                             MeterRegistry meterRegistry) {
+        this.client = client;
+        this.historyService = historyService;
+        this.baseCurrency = baseCurrency;
+        this.maxStaleness = maxStaleness;
+        this.refreshFailures = Counter.builder("currency.rates.refresh.failures")
+                .description("Exchange rate refreshes that failed and kept the previous snapshot")
+                .register(meterRegistry);
+        Gauge.builder("currency.rates.age", current, ref -> {
+                    ExchangeRateSnapshot snapshot = ref.get();
+                    return snapshot != null ? snapshot.age(Instant.now()).toSeconds() : Double.NaN;
+                })
+                .description("Age of the exchange rate snapshot being served")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${currency.rates.refresh-interval:600000}",
+            initialDelayString = "${currency.rates.refresh-interval:600000}")
+    public void refresh() {
+        try {
+            // One quote table; every other pair is derived from it
+            Map<Currency, BigDecimal> quotes = client.fetchLatestRates(baseCurrency);
+            Instant fetchedAt = Instant.now();
+            ExchangeRateSnapshot snapshot = ExchangeRateSnapshot.fromBaseRates(baseCurrency, quotes, fetchedAt);
+            current.set(snapshot);
+            recordHistory(quotes, fetchedAt);
+            lastRefreshFailed = false;
+            log.debug("Exchange rates refreshed (version {})", Long.toHexString(snapshot.getVersion()));
+        } catch (RuntimeException e) {
+            lastRefreshFailed = true;
+            refreshFailures.increment();
+            log.warn("Exchange rate refresh failed, keeping previous snapshot: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${currency.rates.retry-interval:30000}",
+            initialDelayString = "${currency.rates.retry-interval:30000}")
+    public void retryFailedRefresh() {
+        if (lastRefreshFailed) {
+            refresh();
+        }
+    }
+
+    private void recordHistory(Map<Currency, BigDecimal> quotes, Instant fetchedAt) {
+        try {
+            historyService.record(quotes, fetchedAt);
+        } catch (RuntimeException e) {
+            log.warn("Could not record exchange rate history: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @throws ExchangeRateUnavailableException when no snapshot was loaded yet or it is older than max-staleness
+     */
+    public ExchangeRateSnapshot snapshot() {
+        ExchangeRateSnapshot snapshot = current.get();
+        if (snapshot == null) {
+            throw new ExchangeRateUnavailableException("Exchange rates are not available yet");
+        }
+        if (snapshot.age(Instant.now()).compareTo(maxStaleness) > 0) {
+            throw new ExchangeRateUnavailableException(
+                    "Exchange rates are stale (last refresh at " + snapshot.getFetchedAt() + ")");
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,51 @@
+package Projet.Microservice.Services.CurrencyRates;
+
+import Projet.Microservice.Entities.Currency;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Thin client for exchangerate-api.com; only used by the background refresh.
+ */
+@Component
+public class ExchangeRateClient {
+
+    private static final String LATEST_RATES_URL = "https://v6.exchangerate-api.com/v6/{apiKey}/latest/{base}";
+
+    private final RestTemplate restTemplate;
+    private final String apiKey;
+
+    public ExchangeRateClient(@Qualifier("currencyRestTemplate") RestTemplate restTemplate,
+                              @Value("${currency.api.key}") String apiKey) {
+        this.restTemplate = restTemplate;
+        this.apiKey = apiKey;
+    }
+
+    /**
+     * @return the latest rates from base to every supported currency the API quotes
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Currency, BigDecimal> fetchLatestRates(Currency base) {
+        // URI template keeps the API key out of the http.client.requests "uri" tag
+        Map<String, Object> response = restTemplate.getForObject(LATEST_RATES_URL, Map.class, apiKey, base.name());
+
+        if (response == null || !"success".equals(response.get("result"))) {
+            throw new RuntimeException("Failed to fetch conversion rates for " + base);
+        }
+
+        Map<String, Object> quoted = (Map<String, Object>) response.get("conversion_rates");
+        Map<Currency, BigDecimal> rates = new EnumMap<>(Currency.class);
+        for (Currency currency : Currency.values()) {
+            if (quoted.get(currency.name()) instanceof Number rate) {
+                rates.put(currency, new BigDecimal(rate.toString()));
+            }
+        }
+        return rates;
+    }
+}
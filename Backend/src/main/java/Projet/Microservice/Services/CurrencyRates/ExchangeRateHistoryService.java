@@ -0,0 +1,135 @@
+package Projet.Microservice.Services.CurrencyRates;
+
+import Projet.Microservice.Entities.Currency;
+import Projet.Microservice.Entities.ExchangeRateHistory;
+import Projet.Microservice.Exceptions.ExchangeRateUnavailableException;
+import Projet.Microservice.Repositories.ExchangeRateHistoryRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Daily exchange-rate history (UTC days), filled by the {@link ExchangeRateCache} refresh.
+ *
+ * The rate that applies at an instant is the first quote recorded on that instant's day, or on
+ * the latest earlier day when no refresh ran. Cross rates are derived exactly like the live
+ * snapshot. Later refreshes of the same day are not kept, so this is a reference rate for
+ * reporting, not necessarily the one a payment was priced with: that one is stored on the
+ * payment (usd_rate, usd_rate_fetched_at).
+ * Recorded days never change, which makes them safe to keep in memory.
+ */
+@Service
+@Slf4j
+public class ExchangeRateHistoryService {
+
+    private final ExchangeRateHistoryRepository historyRepository;
+    private final Currency baseCurrency;
+    private final int maxRangeDays;
+    private final Cache<LocalDate, ExchangeRateSnapshot> days;
+
+    public ExchangeRateHistoryService(ExchangeRateHistoryRepository historyRepository,
+                                      @Value("${currency.rates.base:USD}") Currency baseCurrency,
+                                      @Value("${currency.rates.history.max-range-days:366}") int maxRangeDays) {
+        this.historyRepository = historyRepository;
+        this.baseCurrency = baseCurrency;
+        this.maxRangeDays = maxRangeDays;
+        this.days = Caffeine.newBuilder().maximumSize(400).build();
+    }
+
+    public void record(Map<Currency, BigDecimal> quotes, Instant fetchedAt) {
+        LocalDate day = dayOf(fetchedAt);
+        int inserted = 0;
+        for (Map.Entry<Currency, BigDecimal> quote : quotes.entrySet()) {
+            inserted += historyRepository.insertIfAbsent(
+                    day, baseCurrency.name(), quote.getKey().name(), quote.getValue(), fetchedAt);
+        }
+        if (inserted > 0) {
+            log.info("Recorded {} exchange rate(s) for {}", inserted, day);
+        }
+    }
+
+    public BigDecimal rateAt(Instant at, Currency from, Currency to) {
+        BigDecimal rate = snapshotAt(at).rate(from, to);
+        if (rate == null) {
+            throw new ExchangeRateUnavailableException("No " + from + "/" + to + " rate recorded for " + dayOf(at));
+        }
+        return rate;
+    }
+
+    public ExchangeRateSnapshot snapshotAt(Instant at) {
+        LocalDate day = dayOf(at);
+        ExchangeRateSnapshot cached = days.getIfPresent(day);
+        if (cached != null) {
+            return cached;
+        }
+
+        LocalDate effective = historyRepository.findEffectiveDate(baseCurrency, day)
+                .orElseThrow(() -> new ExchangeRateUnavailableException("No exchange rates recorded on or before " + day));
+        ExchangeRateSnapshot snapshot = toSnapshot(effective, historyRepository.findByBaseCurrencyAndRateDate(baseCurrency, effective));
+        // Only cache complete days: a fallback to an earlier day may be superseded once this day is recorded
+        if (effective.equals(day)) {
+            days.put(day, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Bulk loader for re-pricing: one query for the whole range, every day of it filled
+     * (days without quotes inherit the previous recorded day). Days before the first record are absent.
+     */
+    public NavigableMap<LocalDate, ExchangeRateSnapshot> snapshotsBetween(LocalDate start, LocalDate end) {
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("End date must not be before start date");
+        }
+        if (ChronoUnit.DAYS.between(start, end) >= maxRangeDays) {
+            throw new IllegalArgumentException("Date range cannot exceed " + maxRangeDays + " days");
+        }
+
+        LocalDate firstDay = historyRepository.findEffectiveDate(baseCurrency, start).orElse(start);
+        Map<LocalDate, List<ExchangeRateHistory>> byDay = historyRepository
+                .findByBaseCurrencyAndRateDateBetweenOrderByRateDate(baseCurrency, firstDay, end)
+                .stream()
+                .collect(Collectors.groupingBy(ExchangeRateHistory::getRateDate, TreeMap::new, Collectors.toList()));
+
+        NavigableMap<LocalDate, ExchangeRateSnapshot> result = new TreeMap<>();
+        ExchangeRateSnapshot current = null;
+        for (LocalDate day = firstDay; !day.isAfter(end); day = day.plusDays(1)) {
+            List<ExchangeRateHistory> rows = byDay.get(day);
+            if (rows != null) {
+                current = toSnapshot(day, rows);
+            }
+            if (current != null && !day.isBefore(start)) {
+                result.put(day, current);
+            }
+        }
+        return result;
+    }
+
+    private ExchangeRateSnapshot toSnapshot(LocalDate day, List<ExchangeRateHistory> rows) {
+        Map<Currency, BigDecimal> quotes = new EnumMap<>(Currency.class);
+        Instant recordedAt = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+        for (ExchangeRateHistory row : rows) {
+            quotes.put(row.getCurrency(), row.getRate());
+            recordedAt = row.getRecordedAt();
+        }
+        return ExchangeRateSnapshot.fromBaseRates(baseCurrency, quotes, recordedAt);
+    }
+
+    private static LocalDate dayOf(Instant instant) {
+        return instant.atZone(ZoneOffset.UTC).toLocalDate();
+    }
+}
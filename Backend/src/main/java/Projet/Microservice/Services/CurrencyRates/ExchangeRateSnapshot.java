@@ -0,0 +1,104 @@
+package Projet.Microservice.Services.CurrencyRates;
+
+import Projet.Microservice.Entities.Currency;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Immutable table of every Currency pair, derived from one base-currency quote.
+ *
+ * Rates live in a flat double[] indexed by from.ordinal() * n + to.ordinal().
+ * Rounding rules:
+ * - a cross rate is quote(to) / quote(from), divided with 15 significant digits, HALF_EVEN;
+ *   15 digits is what a double holds exactly, so {@link #rate} gives back the same decimal
+ *   (BigDecimal.valueOf) that was computed
+ * - from == to is exactly 1, and the base row keeps the upstream quotes (rounded the same way)
+ * - a pair whose quote is missing upstream is stored as NaN and reported as null
+ * A new snapshot is built on each refresh and swapped in whole, so readers never see a
+ * half-updated table.
+ * The version is a hash of the table itself: two snapshots (from any instance, or any refresh)
+ * have the same version exactly when they give the same rates.
+ */
+public final class ExchangeRateSnapshot {
+
+    public static final MathContext CROSS_RATE_CONTEXT = new MathContext(15, RoundingMode.HALF_EVEN);
+
+    private static final Currency[] CURRENCIES = Currency.values();
+    private static final int N = CURRENCIES.length;
+
+    private final double[] matrix;
+    private final Instant fetchedAt;
+    private final long version;
+
+    private ExchangeRateSnapshot(double[] matrix, Instant fetchedAt) {
+        this.matrix = matrix;
+        this.fetchedAt = fetchedAt;
+        this.version = contentHash(matrix);
+    }
+
+    /**
+     * @param quotes rates from base to each currency, as returned by the upstream API
+     */
+    public static ExchangeRateSnapshot fromBaseRates(Currency base, Map<Currency, BigDecimal> quotes,
+                                                     Instant fetchedAt) {
+        BigDecimal[] quote = new BigDecimal[N];
+        for (Currency currency : CURRENCIES) {
+            quote[currency.ordinal()] = currency == base ? BigDecimal.ONE : quotes.get(currency);
+        }
+
+        double[] matrix = new double[N * N];
+        Arrays.fill(matrix, Double.NaN);
+        for (int from = 0; from < N; from++) {
+            for (int to = 0; to < N; to++) {
+                if (from == to) {
+                    matrix[from * N + to] = 1d;
+                } else if (quote[from] != null && quote[to] != null && quote[from].signum() > 0) {
+                    matrix[from * N + to] = quote[to].divide(quote[from], CROSS_RATE_CONTEXT).doubleValue();
+                }
+            }
+        }
+        return new ExchangeRateSnapshot(matrix, fetchedAt);
+    }
+
+    // First 64 bits of SHA-256 over the table; currencies are in declaration order
+    private static long contentHash(double[] matrix) {
+        ByteBuffer bytes = ByteBuffer.allocate(matrix.length * Double.BYTES);
+        for (double rate : matrix) {
+            bytes.putLong(Double.doubleToLongBits(rate));
+        }
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(bytes.array())).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @return the rate from -> to, or null when the upstream did not quote one of the currencies
+     */
+    public BigDecimal rate(Currency from, Currency to) {
+        double rate = matrix[from.ordinal() * N + to.ordinal()];
+        return Double.isNaN(rate) ? null : BigDecimal.valueOf(rate);
+    }
+
+    public Duration age(Instant now) {
+        return Duration.between(fetchedAt, now);
+    }
+
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
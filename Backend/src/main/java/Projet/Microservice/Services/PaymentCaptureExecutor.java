@@ -0,0 +1,57 @@
+package Projet.Microservice.Services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+
+/**
+ * Bounded pool running provider captures off the request thread.
+ *
+ * Kept as a plain component (not an Executor bean) so Boot's applicationTaskExecutor is still
+ * auto-configured. Queue usage is published as executor.*{name=payment.capture}.
+ */
+@Component
+@Slf4j
+public class PaymentCaptureExecutor {
+
+    private final ThreadPoolTaskExecutor executor;
+
+    public PaymentCaptureExecutor(@Value("${payments.capture.pool-size:8}") int poolSize,
+                                  @Value("${payments.capture.queue-capacity:500}") int queueCapacity,
+                                  MeterRegistry meterRegistry) {
+        this.executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("payment-capture-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        ExecutorServiceMetrics.monitor(meterRegistry, executor.getThreadPoolExecutor(), "payment.capture", Collections.emptyList());
+    }
+
+    /**
+     * @return false when the queue is full; the claimed payment is then picked up by recovery
+     */
+    public boolean submit(String paymentId, Runnable capture) {
+        try {
+            executor.execute(capture);
+            return true;
+        } catch (TaskRejectedException e) {
+            log.warn("Capture queue full, payment {} left for recovery", paymentId);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -1,12 +1,18 @@
 package Projet.Microservice.Services;
 
-import Projet.Microservice.Entities.Payment;
+import Projet.Microservice.DTO.PaymentStatusEventDTO;
 import Projet.Microservice.Entities.PaymentStatus;
 import Projet.Microservice.Repositories.PaymentRepository;
-import lombok.RequiredArgsConstructor;
+import Projet.Microservice.Repositories.PaymentRepository.ExpiredPayment;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -14,45 +20,80 @@ import java.util.List;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class PaymentExpiryService {
 
+    private static final long DELETION_DAYS = 2;
+    private static final String EXPIRY_REASON = "Payment expired due to inactivity.";
+
     private final PaymentRepository paymentRepository;
+    private final PaymentPurgeService paymentPurgeService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final DistributionSummary expiredPerRun;
+    private final Timer expiryRunTimer;
 
-    private static final long EXPIRY_MINUTES = 15;
-    private static final long DELETION_DAYS = 2;
+    public PaymentExpiryService(PaymentRepository paymentRepository,
+                                PaymentPurgeService paymentPurgeService,
+                                TransactionTemplate transactionTemplate,
+                                ApplicationEventPublisher eventPublisher,
+                                MeterRegistry meterRegistry,
+                                @Value("${payments.expiry.batch-size:500}") int batchSize,
+                                @Value("${payments.expiry.max-batches-per-run:100}") int maxBatchesPerRun) {
+        this.paymentRepository = paymentRepository;
+        this.paymentPurgeService = paymentPurgeService;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.expiredPerRun = DistributionSummary.builder("payments.expiry.expired")
+                .description("Payments expired per scheduler run")
+                .register(meterRegistry);
+        this.expiryRunTimer = Timer.builder("payments.expiry.run")
+                .description("Duration of a payment expiry run")
+                .register(meterRegistry);
+    }
 
-    // Run every minute: expire old payments
+    // Run every minute: expire payments past their expires_at, batchSize rows per transaction
     @Scheduled(fixedRate = 60_000)
     public void expireUnfinishedPayments() {
-        Instant expiryThreshold = Instant.now().minus(EXPIRY_MINUTES, ChronoUnit.MINUTES);
-
-        List<Payment> paymentsToExpire = paymentRepository
-                .findByPaymentStatusInAndCreatedAtBefore(
-                        List.of(PaymentStatus.CREATED, PaymentStatus.PENDING),
-                        expiryThreshold
-                );
+        Timer.Sample sample = Timer.start();
+        Instant now = Instant.now();
+        int expired = 0;
+        int batches = 0;
 
-        for (Payment payment : paymentsToExpire) {
-            payment.setPaymentStatus(PaymentStatus.EXPIRED);
-            payment.setFailureReason("Payment expired due to inactivity.");
-            paymentRepository.save(payment);
+        try {
+            List<ExpiredPayment> batch;
+            do {
+                // Events are published inside the batch transaction so their outbox rows commit with it
+                batch = transactionTemplate.execute(status -> {
+                    List<ExpiredPayment> expiredBatch = paymentRepository.expireDuePayments(now, EXPIRY_REASON, batchSize);
+                    expiredBatch.forEach(payment -> eventPublisher.publishEvent(PaymentStatusEventDTO.builder()
+                            .paymentId(payment.getPaymentId())
+                            .bookingId(payment.getBookingId())
+                            .status(PaymentStatus.EXPIRED)
+                            .failureReason(EXPIRY_REASON)
+                            .occurredAt(now)
+                            .build()));
+                    return expiredBatch;
+                });
+                expired += batch.size();
+                batches++;
+                log.debug("Expired {} payment(s)", batch.size());
+            } while (batch.size() == batchSize && batches < maxBatchesPerRun);
+        } finally {
+            sample.stop(expiryRunTimer);
+            expiredPerRun.record(expired);
+        }
 
-            log.info("Payment {} expired due to inactivity.", payment.getPaymentId());
-            // Optional: notify user
+        if (expired > 0) {
+            log.info("Expired {} payment(s) in {} batch(es)", expired, batches);
         }
     }
 
     @Scheduled(cron = "0 0 2 * * ?")
     public void deleteOldExpiredPayments() {
-        Instant deletionThreshold = Instant.now().minus(DELETION_DAYS, ChronoUnit.DAYS);
-
-        List<Payment> expiredPayments = paymentRepository
-                .findByPaymentStatusAndCreatedAtBefore(PaymentStatus.EXPIRED, deletionThreshold);
-
-        for (Payment payment : expiredPayments) {
-            paymentRepository.delete(payment);
-            log.info("Deleted expired payment {} for cleanup.", payment.getPaymentId());
-        }
+        paymentPurgeService.startPurge(Instant.now().minus(DELETION_DAYS, ChronoUnit.DAYS));
     }
 }
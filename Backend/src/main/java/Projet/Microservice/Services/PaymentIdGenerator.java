@@ -0,0 +1,72 @@
+package Projet.Microservice.Services;
+
+import org.springframework.stereotype.Component;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered, unguessable payment identifiers (ULID layout), generated without locks.
+ *
+ * A 128-bit value made of 48 bits of Unix milliseconds, a 12-bit per-millisecond sequence and
+ * 68 random bits from a per-thread SecureRandom. The payment endpoints are reachable without a
+ * login (provider redirects, status page), so the ID is what keeps a payment private: the random
+ * part cannot be derived from other IDs, and it also makes IDs from different instances distinct
+ * without any node configuration.
+ * Text form is "PAY-" + 26 Crockford base32 characters: fixed width, so IDs sort as text in
+ * generation order and new rows land on the right-hand edge of the payment_id index. The text is
+ * the only stored form; nothing decodes it back. It is compared exactly, so Crockford's reading
+ * aliases (I/L for 1, O for 0, lower case) do not match: IDs travel in links, never typed by hand.
+ */
+@Component
+public class PaymentIdGenerator {
+
+    public static final String PREFIX = "PAY-";
+
+    private static final int SEQUENCE_BITS = 12;
+    // Random bits kept in the high word, below the timestamp and sequence
+    private static final int HIGH_RANDOM_BITS = 4;
+    private static final int ENCODED_LENGTH = 26;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(PaymentIdGenerator::newRandom);
+
+    // Last issued (millis << SEQUENCE_BITS | sequence); only ever moves forward
+    private final AtomicLong lastTick = new AtomicLong();
+
+    public String nextPaymentId() {
+        UUID id = nextId();
+        return PREFIX + encode(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    public UUID nextId() {
+        long now = System.currentTimeMillis() << SEQUENCE_BITS;
+        // Sequence exhausted within a millisecond, or clock moved backwards: borrow the next tick
+        // instead of waiting, so IDs from this instance stay increasing
+        long tick = lastTick.accumulateAndGet(now, (last, current) -> Math.max(last + 1, current));
+        SecureRandom random = RANDOM.get();
+        long high = (tick << HIGH_RANDOM_BITS) | (random.nextInt() & ((1 << HIGH_RANDOM_BITS) - 1));
+        return new UUID(high, random.nextLong());
+    }
+
+    static String encode(long high, long low) {
+        char[] chars = new char[ENCODED_LENGTH];
+        for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (low & 31)];
+            low = (low >>> 5) | (high << 59);
+            high >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    // DRBG instances are thread-safe but synchronized; one per thread keeps generation uncontended
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+}
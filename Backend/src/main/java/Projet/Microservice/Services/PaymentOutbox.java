@@ -0,0 +1,48 @@
+package Projet.Microservice.Services;
+
+import Projet.Microservice.DTO.PaymentStatusEventDTO;
+import Projet.Microservice.Entities.PaymentOutboxEvent;
+import Projet.Microservice.Repositories.PaymentOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+/**
+ * Writes every published payment status event to the outbox table.
+ *
+ * Runs synchronously inside the publisher's transaction (MANDATORY): the row commits or rolls
+ * back together with the status change, and PaymentOutboxRelay forwards it to Kafka afterwards.
+ */
+@Component
+@RequiredArgsConstructor
+public class PaymentOutbox {
+
+    private final PaymentOutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(PaymentStatusEventDTO event) {
+        outboxRepository.save(PaymentOutboxEvent.builder()
+                .paymentId(event.getPaymentId())
+                .bookingId(event.getBookingId())
+                .status(event.getStatus())
+                .payload(toJson(event))
+                .createdAt(Instant.now())
+                .build());
+    }
+
+    private String toJson(PaymentStatusEventDTO event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize payment event " + event.getPaymentId(), e);
+        }
+    }
+}
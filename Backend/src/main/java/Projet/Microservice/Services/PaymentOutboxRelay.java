@@ -0,0 +1,169 @@
+package Projet.Microservice.Services;
+
+import Projet.Microservice.Entities.PaymentOutboxEvent;
+import Projet.Microservice.Repositories.PaymentOutboxRepository;
+import Projet.Microservice.Repositories.PaymentOutboxRepository.Backlog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes outbox rows to Kafka (payments.outbox.topic), keyed by bookingId.
+ *
+ * Each run sends up to batch-size rows in id order, waits for the broker to acknowledge all of
+ * them and deletes them in the same transaction; the producer's linger.ms / batch.size group the
+ * sends into few requests. Delivery is at-least-once: a batch that fails part-way is sent again
+ * on the next run, so consumers must tolerate duplicates (paymentId + status identifies an event).
+ * Backlog is published as payments.outbox.pending and payments.outbox.lag (age of the oldest row).
+ * Runs on a thread of its own: a broker that is down blocks each send for up to max.block.ms,
+ * which must not hold up the shared scheduler. The thread is started and stopped with the
+ * application context (SmartLifecycle, last phase): no run happens before every other bean has
+ * started, and polling stops before the Kafka producer and the DataSource are closed.
+ */
+@Service
+@Slf4j
+public class PaymentOutboxRelay implements SmartLifecycle {
+
+    private final PaymentOutboxRepository outboxRepository;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String topic;
+    private final int batchSize;
+    private final Duration sendTimeout;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicReference<Instant> oldestPending = new AtomicReference<>();
+    private final Counter publishedEvents;
+    private final Counter publishFailures;
+    private final Timer deliveryDelay;
+    private final Duration pollInterval;
+    private volatile ThreadPoolTaskScheduler relayScheduler;
+
+    public PaymentOutboxRelay(PaymentOutboxRepository outboxRepository,
+                              KafkaTemplate<String, String> kafkaTemplate,
+                              TransactionTemplate transactionTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${payments.outbox.topic:payment-status-events}") String topic,
+                              @Value("${payments.outbox.batch-size:500}") int batchSize,
+                              @Value("${payments.outbox.send-timeout:10s}") Duration sendTimeout,
+                              @Value("${payments.outbox.poll-interval:500}") long pollIntervalMillis) {
+        this.outboxRepository = outboxRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.topic = topic;
+        this.batchSize = batchSize;
+        this.sendTimeout = sendTimeout;
+        Gauge.builder("payments.outbox.pending", pending, AtomicLong::get)
+                .description("Outbox rows not yet published to Kafka")
+                .register(meterRegistry);
+        Gauge.builder("payments.outbox.lag", oldestPending, PaymentOutboxRelay::ageInSeconds)
+                .description("Age of the oldest unpublished outbox row")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.publishedEvents = Counter.builder("payments.outbox.published")
+                .description("Outbox rows published to Kafka")
+                .register(meterRegistry);
+        this.publishFailures = Counter.builder("payments.outbox.publish.failures")
+                .description("Relay batches that Kafka did not fully acknowledge")
+                .register(meterRegistry);
+        this.deliveryDelay = Timer.builder("payments.outbox.delivery")
+                .description("Time from the status change to the Kafka acknowledgement")
+                .register(meterRegistry);
+        this.pollInterval = Duration.ofMillis(pollIntervalMillis);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (relayScheduler != null) {
+            return;
+        }
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("payment-outbox-relay-");
+        // Let a run in progress finish its batch instead of interrupting the Kafka acknowledgement wait
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds((int) sendTimeout.toSeconds() + 1);
+        scheduler.initialize();
+        scheduler.scheduleWithFixedDelay(this::relay, Instant.now().plus(pollInterval), pollInterval);
+        relayScheduler = scheduler;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (relayScheduler != null) {
+            relayScheduler.shutdown();
+            relayScheduler = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return relayScheduler != null;
+    }
+
+    // A run keeps going while full batches come back
+    public void relay() {
+        int published;
+        do {
+            published = transactionTemplate.execute(status -> publishBatch());
+        } while (published == batchSize);
+
+        Backlog backlog = outboxRepository.findBacklog();
+        pending.set(backlog.getPending());
+        oldestPending.set(backlog.getOldestCreatedAt());
+    }
+
+    private int publishBatch() {
+        if (!outboxRepository.tryRelayLock()) {
+            return 0;
+        }
+        List<PaymentOutboxEvent> batch = outboxRepository.findAllByOrderByIdAsc(PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        CompletableFuture<?>[] sends = batch.stream()
+                .map(event -> kafkaTemplate.send(topic, event.getBookingId(), event.getPayload()))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(sends).get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // Rows stay in the outbox and are sent again on the next run
+            publishFailures.increment();
+            log.warn("Publishing {} outbox event(s) to {} failed: {}", batch.size(), topic, e.toString());
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+
+        outboxRepository.deleteAllByIdInBatch(batch.stream().map(PaymentOutboxEvent::getId).toList());
+        Instant acknowledgedAt = Instant.now();
+        batch.forEach(event -> deliveryDelay.record(Duration.between(event.getCreatedAt(), acknowledgedAt)));
+        publishedEvents.increment(batch.size());
+        return batch.size();
+    }
+
+    private static double ageInSeconds(AtomicReference<Instant> oldest) {
+        Instant createdAt = oldest.get();
+        return createdAt == null ? 0 : Duration.between(createdAt, Instant.now()).toMillis() / 1000.0;
+    }
+}
@@ -0,0 +1,135 @@
+package Projet.Microservice.Services;
+
+import Projet.Microservice.Repositories.PaymentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes old EXPIRED payments (and their refunds) in fixed-size keyset chunks.
+ *
+ * Every chunk is its own short transaction, followed by a pause so autovacuum and regular
+ * traffic keep up. A run stops when nothing is left or when max-run-duration is reached;
+ * since committed chunks are gone for good, the next run simply carries on where the
+ * interrupted one stopped.
+ * Scheduled runs execute on a dedicated thread (payment-purge): a run sleeps between chunks for
+ * up to max-run-duration and must not hold one of the shared scheduler threads meanwhile.
+ * Rows purged are counted as payments.purge.purged and runs timed as payments.purge.run.
+ */
+@Service
+@Slf4j
+public class PaymentPurgeService {
+
+    private final PaymentRepository paymentRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final Duration throttle;
+    private final Duration maxRunDuration;
+    private final Counter purgedCounter;
+    private final Timer purgeRunTimer;
+    // One thread, no queue: a run requested while the previous one is still going is skipped
+    private final ThreadPoolTaskExecutor purgeExecutor;
+
+    public PaymentPurgeService(PaymentRepository paymentRepository,
+                               TransactionTemplate transactionTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${payments.purge.chunk-size:1000}") int chunkSize,
+                               @Value("${payments.purge.throttle:200ms}") Duration throttle,
+                               @Value("${payments.purge.max-run-duration:30m}") Duration maxRunDuration) {
+        this.paymentRepository = paymentRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+        this.throttle = throttle;
+        this.maxRunDuration = maxRunDuration;
+        this.purgedCounter = Counter.builder("payments.purge.purged")
+                .description("Expired payments deleted by the purge job")
+                .register(meterRegistry);
+        this.purgeRunTimer = Timer.builder("payments.purge.run")
+                .description("Duration of a purge run")
+                .register(meterRegistry);
+        this.purgeExecutor = new ThreadPoolTaskExecutor();
+        purgeExecutor.setCorePoolSize(1);
+        purgeExecutor.setMaxPoolSize(1);
+        purgeExecutor.setQueueCapacity(0);
+        purgeExecutor.setThreadNamePrefix("payment-purge-");
+        purgeExecutor.initialize();
+    }
+
+    /**
+     * Starts a purge run in the background and returns immediately.
+     *
+     * @return false when the previous run has not finished yet (nothing is started)
+     */
+    public boolean startPurge(Instant threshold) {
+        try {
+            purgeExecutor.execute(() -> purgeExpiredBefore(threshold));
+            return true;
+        } catch (TaskRejectedException e) {
+            log.warn("Previous payment purge still running, skipping this run");
+            return false;
+        }
+    }
+
+    public PurgeResult purgeExpiredBefore(Instant threshold) {
+        long startedAt = System.nanoTime();
+        long deadline = startedAt + maxRunDuration.toNanos();
+        long afterId = 0;
+        long purged = 0;
+        int chunks = 0;
+        boolean completed = false;
+
+        try {
+            while (System.nanoTime() < deadline) {
+                final long cursor = afterId;
+                PaymentRepository.PurgedChunk chunk = transactionTemplate.execute(
+                        status -> paymentRepository.purgeExpiredChunk(threshold, cursor, chunkSize));
+
+                if (chunk == null || chunk.getPurged() == 0) {
+                    completed = true;
+                    break;
+                }
+                purged += chunk.getPurged();
+                purgedCounter.increment(chunk.getPurged());
+                afterId = chunk.getLastId();
+                chunks++;
+
+                if (chunk.getPurged() < chunkSize) {
+                    completed = true;
+                    break;
+                }
+                Thread.sleep(throttle.toMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Payment purge interrupted after {} chunk(s), last id {}", chunks, afterId);
+        } finally {
+            purgeRunTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+        PurgeResult result = new PurgeResult(purged, chunks, elapsed, completed);
+        log.info("Purged {} expired payment(s) in {} chunk(s), {} ms{}", purged, chunks, elapsed.toMillis(),
+                completed ? "" : " (stopped early, remaining rows are left for the next run)");
+        return result;
+    }
+
+    // Interrupts a run in progress; it stops after the current chunk
+    @PreDestroy
+    public void shutdown() {
+        purgeExecutor.shutdown();
+    }
+
+    public record PurgeResult(long rowsPurged, int chunks, Duration elapsed, boolean completed) {
+    }
+}
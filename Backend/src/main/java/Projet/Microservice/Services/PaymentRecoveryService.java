@@ -0,0 +1,82 @@
+package Projet.Microservice.Services;
+
+import Projet.Microservice.DTO.PaymentStatusEventDTO;
+import Projet.Microservice.Entities.Payment;
+import Projet.Microservice.Entities.PaymentStatus;
+import Projet.Microservice.Repositories.PaymentRepository;
+import Projet.Microservice.Repositories.PaymentRepository.ReleasedPayment;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repairs payments left in an intermediate status by an instance that died between two steps.
+ *
+ * INITIATING older than stuck-after goes back to CREATED: the provider order (if one was
+ * created) was never shown to the user, so initiating again simply creates a new one.
+ * The change is published like any other status change (outbox row and SSE subscribers).
+ * CAPTURING older than capturing-stuck-after is resubmitted; PayPal answers ORDER_ALREADY_CAPTURED
+ * when the first attempt went through, which completes the payment.
+ */
+@Service
+@Slf4j
+public class PaymentRecoveryService {
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentService paymentService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration initiatingStuckAfter;
+    private final Duration capturingStuckAfter;
+
+    public PaymentRecoveryService(PaymentRepository paymentRepository,
+                                  PaymentService paymentService,
+                                  TransactionTemplate transactionTemplate,
+                                  ApplicationEventPublisher eventPublisher,
+                                  @Value("${payments.recovery.initiating-stuck-after:5m}") Duration initiatingStuckAfter,
+                                  @Value("${payments.recovery.capturing-stuck-after:5m}") Duration capturingStuckAfter) {
+        this.paymentRepository = paymentRepository;
+        this.paymentService = paymentService;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.initiatingStuckAfter = initiatingStuckAfter;
+        this.capturingStuckAfter = capturingStuckAfter;
+    }
+
+    @Scheduled(fixedDelayString = "${payments.recovery.interval:60000}")
+    public void recoverStuckPayments() {
+        Instant now = Instant.now();
+        // Events are published inside the release transaction so their outbox rows commit with it
+        List<ReleasedPayment> released = transactionTemplate.execute(status -> {
+            List<ReleasedPayment> payments = paymentRepository.releaseStuckPayments(
+                    PaymentStatus.INITIATING, PaymentStatus.CREATED, now.minus(initiatingStuckAfter), now);
+            payments.forEach(payment -> eventPublisher.publishEvent(PaymentStatusEventDTO.builder()
+                    .paymentId(payment.getPaymentId())
+                    .bookingId(payment.getBookingId())
+                    .status(PaymentStatus.CREATED)
+                    .occurredAt(now)
+                    .build()));
+            return payments;
+        });
+        if (!released.isEmpty()) {
+            log.warn("Released {} payment(s) stuck in INITIATING", released.size());
+        }
+
+        Instant capturingStuckBefore = now.minus(capturingStuckAfter);
+        List<Payment> stuckCaptures = paymentRepository
+                .findByPaymentStatusAndUpdatedAtBefore(PaymentStatus.CAPTURING, capturingStuckBefore);
+        for (Payment payment : stuckCaptures) {
+            if (paymentRepository.reclaimStuckCapture(payment.getPaymentId(), capturingStuckBefore, now) == 1) {
+                log.warn("Resubmitting capture of payment {} stuck in CAPTURING", payment.getPaymentId());
+                paymentService.submitCapture(payment);
+            }
+        }
+    }
+}
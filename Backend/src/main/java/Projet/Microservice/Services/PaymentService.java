@@ -1,8 +1,12 @@
 package Projet.Microservice.Services;
 
 import Projet.Microservice.DTO.CreatePaymentRequestDTO;
+import Projet.Microservice.DTO.PaymentCursorPageDTO;
+import Projet.Microservice.DTO.PaymentHistoryItemDTO;
 import Projet.Microservice.DTO.PaymentRedirectDTO;
 import Projet.Microservice.DTO.PaymentResponseDTO;
+import Projet.Microservice.DTO.PaymentStatusEventDTO;
+import Projet.Microservice.DTO.PaymentStatusSummaryDTO;
 import Projet.Microservice.Entities.Currency;
 import Projet.Microservice.Entities.Payment;
 import Projet.Microservice.Entities.PaymentMethod;
@@ -13,62 +17,89 @@ import Projet.Microservice.Exceptions.PaymentNotFoundException;
 import Projet.Microservice.Exceptions.PaymentStatusException;
 import Projet.Microservice.Exceptions.UnsupportedCurrencyException;
 import Projet.Microservice.Repositories.PaymentRepository;
+import Projet.Microservice.Services.CurrencyConversionService.Conversion;
 import Projet.Microservice.Services.PaymentProviders.PaymentProviderFactory;
 import Projet.Microservice.Services.PaymentProviders.PaymentProviderService;
 import Projet.Microservice.Services.PaymentProviders.PayPalPaymentService;
 import Projet.Microservice.Services.UserService.UserService;
 import com.paypal.orders.Order;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.AuditorAware;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class PaymentService {
 
+    private static final int MAX_PAYMENT_ID_ATTEMPTS = 3;
+    // Statuses a success callback can find once the approval was handled: the callback just reports them
+    private static final Set<PaymentStatus> PAST_APPROVAL = EnumSet.of(PaymentStatus.CAPTURING,
+            PaymentStatus.COMPLETED, PaymentStatus.FAILED, PaymentStatus.CANCELLED, PaymentStatus.EXPIRED,
+            PaymentStatus.REFUNDED, PaymentStatus.PARTIALLY_REFUNDED);
+
     private final PaymentRepository paymentRepository;
     private final CurrencyConversionService conversionService;
     private final PaymentProviderFactory providerFactory;
     private final PayPalPaymentService payPalPaymentService;
     private final UserService userService;
+    private final PaymentCaptureExecutor captureExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PaymentStatusStreams statusStreams;
+    private final AuditorAware<String> auditorAware;
+    private final PaymentIdGenerator paymentIdGenerator;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${payments.bulk-status.max-ids:1000}")
+    private int bulkStatusMaxIds;
+
+    @Value("${payments.bulk-status.chunk-size:200}")
+    private int bulkStatusChunkSize;
 
     // CREATE a new payment
-    @Transactional
+    // "Booking already paid" and "one open payment per user" are enforced by the database
+    // (booking_id unique, uk_payments_user_open); the insert is a single ON CONFLICT DO NOTHING statement.
     public PaymentResponseDTO createPayment(CreatePaymentRequestDTO request) {
         validateCreatePaymentRequest(request);
 
         // Get the current authenticated user
         UserEntity user = userService.getCurrentUser();
 
-        if (paymentRepository.existsByBookingId(request.getBookingId())) {
-            throw new BookingAlreadyPaidException(request.getBookingId());
-        }
-
-        // Check for pending payments using user ID
-        if (paymentRepository.existsByUser_IdAndPaymentStatusIn(
-                user.getId(),
-                List.of(PaymentStatus.CREATED, PaymentStatus.PENDING))) {
-            throw new PaymentStatusException(
-                    "You already have a pending payment. Please complete it before creating a new one.");
-        }
-
         // Check currency availability
         List<PaymentMethod> availableMethods = providerFactory.getAvailableMethods(request.getCurrency().name());
         if (!availableMethods.contains(request.getPaymentMethod())) {
             throw new UnsupportedCurrencyException(request.getCurrency().name());
         }
 
+        Instant now = Instant.now();
+        Conversion usd = convertToUSD(request.getAmount(), request.getCurrency());
         Payment payment = Payment.builder()
-                .paymentId(generatePaymentId())
+                .paymentId(paymentIdGenerator.nextPaymentId())
                 .bookingId(request.getBookingId())
                 .user(user) // SET USER ENTITY instead of userId string
                 .amount(request.getAmount())
@@ -76,104 +107,207 @@ public class PaymentService {
                 .paymentMethod(request.getPaymentMethod())
                 .description(request.getDescription())
                 .paymentStatus(PaymentStatus.CREATED)
-                .expiresAt(Instant.now().plusSeconds(1800))
-                .amountInUSD(convertToUSD(request.getAmount(), request.getCurrency()))
+                .expiresAt(now.plusSeconds(1800))
+                .amountInUSD(usd.amount())
+                .usdRate(usd.rate())
+                .usdRateFetchedAt(usd.ratesFetchedAt())
                 .build();
 
-        payment = paymentRepository.save(payment);
+        // Native insert: auditing fields are not filled by the entity listener
+        String auditor = auditorAware.getCurrentAuditor().orElse("system");
+        payment.setCreatedAt(now);
+        payment.setUpdatedAt(now);
+        payment.setCreatedBy(auditor);
+        payment.setUpdatedBy(auditor);
+
+        payment.setId(insertPayment(payment));
         log.info("Payment created successfully: {}", payment.getPaymentId());
 
         return mapToResponseDTO(payment);
     }
-@Transactional
-public PaymentRedirectDTO initiatePayment(String paymentId) {
-    Payment payment = paymentRepository.findByPaymentId(paymentId)
-            .orElseThrow(() -> new PaymentNotFoundException(paymentId));
+    // Not @Transactional: the provider call runs without holding a DB connection.
+    // CREATED -> INITIATING (reserve), provider call, INITIATING -> PENDING + provider order ID,
+    // each DB step being a single conditional UPDATE (plus its outbox row, see applyTransition).
+    // Crashes in between are released by PaymentRecoveryService.
+    public PaymentRedirectDTO initiatePayment(String paymentId) {
+        // The provider sets status / provider ID on this object: it must never be flushed
+        Payment payment = findDetached(paymentId);
+
+        if (payment.getPaymentStatus() != PaymentStatus.CREATED) {
+            return notInitiable(paymentId, payment.getPaymentStatus());
+        }
 
-    if (payment.getPaymentStatus() != PaymentStatus.CREATED) {
-        // Retourner un DTO avec le statut actuel au lieu de lever une exception
-        return PaymentRedirectDTO.builder()
-                .paymentId(paymentId)
-                .status(payment.getPaymentStatus().name())
-                .message("Le paiement ne peut pas être initié. Statut actuel: " + payment.getPaymentStatus())
-                .build();
-    }
+        if (payment.getExpiresAt().isBefore(Instant.now())) {
+            applyTransition(
+                    () -> paymentRepository.transitionStatus(paymentId, PaymentStatus.CREATED, PaymentStatus.EXPIRED, Instant.now()),
+                    statusEvent(payment, PaymentStatus.EXPIRED, null));
+            return PaymentRedirectDTO.builder()
+                    .paymentId(paymentId)
+                    .status(PaymentStatus.EXPIRED.name())
+                    .message("Le paiement a expiré")
+                    .build();
+        }
 
-    if (payment.getExpiresAt().isBefore(Instant.now())) {
-        payment.setPaymentStatus(PaymentStatus.EXPIRED);
-        paymentRepository.save(payment);
-        return PaymentRedirectDTO.builder()
-                .paymentId(paymentId)
-                .status(PaymentStatus.EXPIRED.name())
-                .message("Le paiement a expiré")
-                .build();
-    }
+        // Only one caller can win the reservation
+        if (!applyTransition(
+                () -> paymentRepository.transitionStatus(paymentId, PaymentStatus.CREATED, PaymentStatus.INITIATING, Instant.now()),
+                statusEvent(payment, PaymentStatus.INITIATING, null))) {
+            PaymentStatus current = paymentRepository.findByPaymentId(paymentId)
+                    .map(Payment::getPaymentStatus)
+                    .orElseThrow(() -> new PaymentNotFoundException(paymentId));
+            return notInitiable(paymentId, current);
+        }
 
-    PaymentProviderService provider = providerFactory.getProvider(payment.getPaymentMethod());
-    PaymentRedirectDTO redirect = provider.processPayment(payment);
+        PaymentRedirectDTO redirect;
+        try {
+            PaymentProviderService provider = providerFactory.getProvider(payment.getPaymentMethod());
+            redirect = provider.processPayment(payment);
+        } catch (RuntimeException e) {
+            // Nothing was committed with the provider; let the user retry
+            applyTransition(
+                    () -> paymentRepository.transitionStatus(paymentId, PaymentStatus.INITIATING, PaymentStatus.CREATED, Instant.now()),
+                    statusEvent(payment, PaymentStatus.CREATED, null));
+            throw e;
+        }
 
-    payment.setPaymentStatus(PaymentStatus.PENDING);
-    paymentRepository.save(payment);
+        if (!applyTransition(
+                () -> paymentRepository.transitionStatusWithProviderId(paymentId, PaymentStatus.INITIATING, PaymentStatus.PENDING,
+                        payment.getProviderTransactionId(), Instant.now()),
+                statusEvent(payment, PaymentStatus.PENDING, null))) {
+            log.warn("Payment {} left INITIATING while its provider order was being created", paymentId);
+            throw new PaymentStatusException("Payment " + paymentId + " changed state during initiation, please retry.");
+        }
 
-    log.info("Payment initiated successfully: {}", paymentId);
-    return redirect;
-}
+        log.info("Payment initiated successfully: {}", paymentId);
+        return redirect;
+    }
 
-    @Transactional
+    // Returns as soon as the capture is queued: PENDING -> CAPTURING is claimed with a conditional
+    // update (a repeated callback finds it already claimed), the capture itself runs on PaymentCaptureExecutor.
     public PaymentResponseDTO handlePayPalSuccess(String paymentId, String token, String payerId) {
-        Payment payment = paymentRepository.findByPaymentId(paymentId)
-                .orElseThrow(() -> new PaymentNotFoundException(paymentId));
-
-
-
-        if (payment.getPaymentStatus() != PaymentStatus.PENDING) {
-            throw new IllegalStateException("Invalid payment status for capture: " + payment.getPaymentStatus());
+        Payment payment = findDetached(paymentId);
+
+        if (applyTransition(
+                () -> paymentRepository.claimForCapture(paymentId, token, Instant.now()),
+                statusEvent(payment, PaymentStatus.CAPTURING, null))) {
+            payment.setPaymentStatus(PaymentStatus.CAPTURING);
+            payment.setPaymentToken(token);
+            submitCapture(payment);
+        } else {
+            // Repeated or late callback; the status read above may predate the claim that won
+            payment = findDetached(paymentId);
+            if (!PAST_APPROVAL.contains(payment.getPaymentStatus())) {
+                throw new IllegalStateException("Invalid payment status for capture: " + payment.getPaymentStatus());
+            }
+            log.info("PayPal success callback for payment {} already handled, status {}",
+                    paymentId, payment.getPaymentStatus());
         }
 
+        return mapToResponseDTO(payment);
+    }
+
+    void submitCapture(Payment payment) {
+        captureExecutor.submit(payment.getPaymentId(), () -> capturePayPalPayment(
+                payment.getPaymentId(), payment.getBookingId(), payment.getProviderTransactionId()));
+    }
 
+    // Runs outside any transaction; only the final CAPTURING -> COMPLETED / FAILED update touches the DB
+    private void capturePayPalPayment(String paymentId, String bookingId, String providerTransactionId) {
         try {
             // Capture the PayPal payment using the stored provider transaction ID
-            Order capturedOrder = payPalPaymentService.capturePayment(payment.getProviderTransactionId());
+            Order capturedOrder = payPalPaymentService.capturePayment(providerTransactionId);
 
             // Check if capture was successful
             if ("COMPLETED".equals(capturedOrder.status())) {
-                payment.setPaymentStatus(PaymentStatus.COMPLETED);
-                payment.setProcessedAt(Instant.now());
-                payment.setPaymentToken(token);
-
+                finishCapture(paymentId, bookingId, providerTransactionId, PaymentStatus.COMPLETED, null);
                 log.info("PayPal payment captured successfully. PaymentId: {}, OrderId: {}",
-                        paymentId, payment.getProviderTransactionId());
+                        paymentId, providerTransactionId);
             } else {
-                payment.setPaymentStatus(PaymentStatus.FAILED);
-                payment.setFailureReason("PayPal capture failed. Order status: " + capturedOrder.status());
-
+                finishCapture(paymentId, bookingId, providerTransactionId, PaymentStatus.FAILED,
+                        "PayPal capture failed. Order status: " + capturedOrder.status());
                 log.error("PayPal payment capture failed. PaymentId: {}, Status: {}",
                         paymentId, capturedOrder.status());
             }
 
-            paymentRepository.save(payment);
-            return mapToResponseDTO(payment);
-
         } catch (IOException e) {
+            // A resubmitted capture (recovery) may find the order already captured by the first attempt
+            if (e.getMessage() != null && e.getMessage().contains("ORDER_ALREADY_CAPTURED")) {
+                finishCapture(paymentId, bookingId, providerTransactionId, PaymentStatus.COMPLETED, null);
+                log.info("PayPal order {} was already captured, payment {} completed", providerTransactionId, paymentId);
+                return;
+            }
             log.error("Error capturing PayPal payment: {}", paymentId, e);
-            payment.setPaymentStatus(PaymentStatus.FAILED);
-            payment.setFailureReason("Technical error during payment capture: " + e.getMessage());
-            paymentRepository.save(payment);
-            throw new RuntimeException("Failed to capture PayPal payment", e);
+            finishCapture(paymentId, bookingId, providerTransactionId, PaymentStatus.FAILED,
+                    "Technical error during payment capture: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Left in CAPTURING: PaymentRecoveryService resubmits it
+            log.error("Unexpected error capturing PayPal payment: {}", paymentId, e);
+        }
+    }
+
+    private void finishCapture(String paymentId, String bookingId, String providerTransactionId,
+                               PaymentStatus status, String failureReason) {
+        Instant now = Instant.now();
+        Instant processedAt = status == PaymentStatus.COMPLETED ? now : null;
+        boolean applied = applyTransition(
+                () -> paymentRepository.finishCapture(paymentId, status, failureReason, processedAt, now),
+                PaymentStatusEventDTO.builder()
+                        .paymentId(paymentId)
+                        .bookingId(bookingId)
+                        .status(status)
+                        .failureReason(failureReason)
+                        .occurredAt(now)
+                        .build());
+        if (applied) {
+            return;
+        }
+
+        PaymentStatus current = paymentRepository.findByPaymentId(paymentId)
+                .map(Payment::getPaymentStatus)
+                .orElse(null);
+        if (current == status) {
+            // A resubmitted capture finished first with the same outcome
+            log.debug("Capture result for payment {} already recorded as {}", paymentId, status);
+            return;
         }
+        // The provider outcome could not be recorded: needs manual reconciliation
+        meterRegistry.counter("payments.capture.unrecorded", "outcome", status.name()).increment();
+        log.error("Capture of payment {} ended {} but the payment is now {}; reconcile with provider order {}",
+                paymentId, status, current, providerTransactionId);
     }
 
-    @Transactional
+    // PENDING / CREATED -> CANCELLED; a payment already captured, expired or cancelled is left as it is
     public PaymentResponseDTO handlePayPalCancel(String paymentId) {
-        Payment payment = paymentRepository.findByPaymentId(paymentId)
-                .orElseThrow(() -> new PaymentNotFoundException(paymentId));
+        Payment payment = findDetached(paymentId);
+        String reason = "Payment cancelled by user";
+
+        if (applyTransition(
+                () -> paymentRepository.cancelOpenPayment(paymentId, reason, Instant.now()),
+                statusEvent(payment, PaymentStatus.CANCELLED, reason))) {
+            payment.setPaymentStatus(PaymentStatus.CANCELLED);
+            payment.setFailureReason(reason);
+            log.info("PayPal payment cancelled by user: {}", paymentId);
+            return mapToResponseDTO(payment);
+        }
 
-        payment.setPaymentStatus(PaymentStatus.CANCELLED);
-        payment.setFailureReason("Payment cancelled by user");
-        paymentRepository.save(payment);
+        Payment current = findDetached(paymentId);
+        log.info("Cancel callback ignored for payment {} in status {}", paymentId, current.getPaymentStatus());
+        return mapToResponseDTO(current);
+    }
 
-        log.info("PayPal payment cancelled by user: {}", paymentId);
-        return mapToResponseDTO(payment);
+    // Opens an SSE stream; the current status is the first event, transitions follow as they commit
+    public SseEmitter subscribeToStatus(String paymentId) {
+        return statusStreams.subscribe(paymentId, () -> {
+            Payment payment = paymentRepository.findByPaymentId(paymentId)
+                    .orElseThrow(() -> new PaymentNotFoundException(paymentId));
+            return PaymentStatusEventDTO.builder()
+                    .paymentId(payment.getPaymentId())
+                    .bookingId(payment.getBookingId())
+                    .status(payment.getPaymentStatus())
+                    .failureReason(payment.getFailureReason())
+                    .occurredAt(payment.getUpdatedAt())
+                    .build();
+        });
     }
 
     // GET a payment by ID
@@ -184,6 +318,26 @@ public PaymentRedirectDTO initiatePayment(String paymentId) {
         return mapToResponseDTO(payment);
     }
 
+    // Drops blank / duplicate IDs and enforces payments.bulk-status.max-ids, before any response is written
+    public List<String> prepareStatusLookup(Collection<String> paymentIds) {
+        List<String> ids = paymentIds.stream()
+                .filter(id -> id != null && !id.isBlank())
+                .distinct()
+                .toList();
+        if (ids.size() > bulkStatusMaxIds) {
+            throw new IllegalArgumentException("At most " + bulkStatusMaxIds + " payment IDs can be requested at once");
+        }
+        return ids;
+    }
+
+    // One query per payments.bulk-status.chunk-size IDs, each chunk handed over as soon as it is read
+    public void forEachStatusChunk(List<String> paymentIds, Consumer<List<PaymentStatusSummaryDTO>> consumer) {
+        for (int from = 0; from < paymentIds.size(); from += bulkStatusChunkSize) {
+            List<String> chunk = paymentIds.subList(from, Math.min(from + bulkStatusChunkSize, paymentIds.size()));
+            consumer.accept(paymentRepository.findStatusSummaries(chunk));
+        }
+    }
+
     @Transactional(readOnly = true)
     public Page<PaymentResponseDTO> getUserPayments(Pageable pageable) {
         // Get current user's ID from UserService
@@ -192,6 +346,54 @@ public PaymentRedirectDTO initiatePayment(String paymentId) {
         return payments.map(this::mapToResponseDTO);
     }
 
+    // Keyset page of the current user's history: no COUNT query, same cost at any depth
+    @Transactional(readOnly = true)
+    public PaymentCursorPageDTO getUserPaymentsAfter(String cursor, int size) {
+        if (size < 1 || size > 100) {
+            throw new IllegalArgumentException("Page size must be between 1 and 100");
+        }
+        Long userId = userService.getCurrentAppUserId();
+
+        // One extra row tells whether another page exists
+        List<PaymentHistoryItemDTO> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = paymentRepository.findHistoryFirstPage(userId, size + 1);
+        } else {
+            HistoryCursor position = HistoryCursor.decode(cursor);
+            rows = paymentRepository.findHistoryPageAfter(userId, position.createdAt(), position.id(), size + 1);
+        }
+
+        boolean hasMore = rows.size() > size;
+        List<PaymentHistoryItemDTO> items = hasMore ? rows.subList(0, size) : rows;
+        PaymentHistoryItemDTO last = items.isEmpty() ? null : items.get(items.size() - 1);
+
+        return PaymentCursorPageDTO.builder()
+                .items(items)
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? new HistoryCursor(last.getCreatedAt(), last.getId()).encode() : null)
+                .build();
+    }
+
+    // Opaque to clients: base64url("<createdAt>|<id>")
+    private record HistoryCursor(Instant createdAt, Long id) {
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static HistoryCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new HistoryCursor(Instant.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+
     // ==== Helper Methods ====
 
     private void validateCreatePaymentRequest(CreatePaymentRequestDTO request) {
@@ -211,14 +413,79 @@ public PaymentRedirectDTO initiatePayment(String paymentId) {
         }
     }
 
-    private String generatePaymentId() {
-        return "PAY-" + System.currentTimeMillis() + "-" +
-                String.valueOf(Math.random()).substring(2, 8);
+    // Runs a conditional status update and, when it matched, publishes the event in the same
+    // transaction: PaymentOutbox writes its row there, SSE subscribers are notified after commit
+    private boolean applyTransition(IntSupplier update, PaymentStatusEventDTO event) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (update.getAsInt() == 0) {
+                return false;
+            }
+            eventPublisher.publishEvent(event);
+            return true;
+        }));
+    }
+
+    // With open-in-view the request's persistence context outlives each transaction, so a managed
+    // Payment changed in memory would be written back by the next transaction of the request
+    private Payment findDetached(String paymentId) {
+        Payment payment = paymentRepository.findByPaymentId(paymentId)
+                .orElseThrow(() -> new PaymentNotFoundException(paymentId));
+        entityManager.detach(payment);
+        return payment;
+    }
+
+    private PaymentStatusEventDTO statusEvent(Payment payment, PaymentStatus status, String failureReason) {
+        return PaymentStatusEventDTO.builder()
+                .paymentId(payment.getPaymentId())
+                .bookingId(payment.getBookingId())
+                .status(status)
+                .failureReason(failureReason)
+                .occurredAt(Instant.now())
+                .build();
+    }
+
+    private PaymentRedirectDTO notInitiable(String paymentId, PaymentStatus status) {
+        // Retourner un DTO avec le statut actuel au lieu de lever une exception
+        return PaymentRedirectDTO.builder()
+                .paymentId(paymentId)
+                .status(status.name())
+                .message("Le paiement ne peut pas être initié. Statut actuel: " + status)
+                .build();
+    }
+
+    // Only reached after the insert hit a unique constraint, so the extra lookup is off the normal path
+    // ON CONFLICT DO NOTHING cannot name a single arbiter here, so a payment_id collision also comes
+    // back empty: it is told apart from the business conflicts and retried with a new ID
+    private Long insertPayment(Payment payment) {
+        for (int attempt = 1; ; attempt++) {
+            Optional<Long> id = paymentRepository.insertIfNoConflict(payment);
+            if (id.isPresent()) {
+                return id.get();
+            }
+            if (!paymentRepository.existsByPaymentId(payment.getPaymentId())) {
+                throw creationConflict(payment.getBookingId());
+            }
+            if (attempt == MAX_PAYMENT_ID_ATTEMPTS) {
+                throw new IllegalStateException("No unused payment ID after " + attempt + " attempts");
+            }
+            log.warn("Generated payment ID {} is already taken, retrying with a new one", payment.getPaymentId());
+            payment.setPaymentId(paymentIdGenerator.nextPaymentId());
+        }
+    }
+
+    private RuntimeException creationConflict(String bookingId) {
+        if (paymentRepository.existsByBookingId(bookingId)) {
+            return new BookingAlreadyPaidException(bookingId);
+        }
+        return new PaymentStatusException(
+                "You already have a pending payment. Please complete it before creating a new one.");
     }
 
-    private BigDecimal convertToUSD(BigDecimal amount, Currency currency) {
-        if (currency == Currency.USD) return amount;
-        return conversionService.convert(amount, currency, Currency.USD);
+    private Conversion convertToUSD(BigDecimal amount, Currency currency) {
+        if (currency == Currency.USD) return new Conversion(amount, BigDecimal.ONE, null);
+        // Live snapshot (in memory, refreshed in the background). The daily history keeps only the
+        // first quote of each day, so the rate used is stored with the payment.
+        return conversionService.convertWithRate(amount, currency, Currency.USD);
     }
 
     private PaymentResponseDTO mapToResponseDTO(Payment payment) {
@@ -0,0 +1,181 @@
+package Projet.Microservice.Services;
+
+import Projet.Microservice.DTO.PaymentStatusEventDTO;
+import Projet.Microservice.Entities.PaymentStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * In-process registry of Server-Sent Event subscriptions to payment status changes.
+ *
+ * A subscription is only an SseEmitter: nothing is buffered per connection, each transition is
+ * written once to the open emitters and dropped. Connections are capped globally (max-connections)
+ * and per payment (max-per-payment), idle ones get a heartbeat comment so proxies keep them open
+ * (sent from a thread of its own, since writes to slow clients block),
+ * and streams are completed once the payment reaches a final status.
+ * Open streams are published as payments.events.connections.
+ */
+@Component
+@Slf4j
+public class PaymentStatusStreams {
+
+    private static final Set<PaymentStatus> FINAL_STATUSES = EnumSet.of(
+            PaymentStatus.COMPLETED, PaymentStatus.FAILED, PaymentStatus.CANCELLED,
+            PaymentStatus.EXPIRED, PaymentStatus.REFUNDED, PaymentStatus.PARTIALLY_REFUNDED);
+
+    private final Map<String, Set<SseEmitter>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final int maxConnections;
+    private final int maxPerPayment;
+    private final Duration timeout;
+    private final ThreadPoolTaskScheduler heartbeatScheduler;
+
+    public PaymentStatusStreams(@Value("${payments.events.max-connections:5000}") int maxConnections,
+                                @Value("${payments.events.max-per-payment:5}") int maxPerPayment,
+                                @Value("${payments.events.timeout:30m}") Duration timeout,
+                                @Value("${payments.events.heartbeat-interval:15000}") long heartbeatIntervalMillis,
+                                MeterRegistry meterRegistry) {
+        this.maxConnections = maxConnections;
+        this.maxPerPayment = maxPerPayment;
+        this.timeout = timeout;
+        this.heartbeatScheduler = new ThreadPoolTaskScheduler();
+        heartbeatScheduler.setPoolSize(1);
+        heartbeatScheduler.setThreadNamePrefix("payment-events-heartbeat-");
+        heartbeatScheduler.initialize();
+        Duration heartbeatInterval = Duration.ofMillis(heartbeatIntervalMillis);
+        heartbeatScheduler.scheduleWithFixedDelay(this::heartbeat, Instant.now().plus(heartbeatInterval), heartbeatInterval);
+        Gauge.builder("payments.events.connections", connections, AtomicInteger::get)
+                .description("Open payment status event streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registers the stream first and only then reads the current status, which is sent as the first
+     * event: a transition committing in between is either in that read or delivered afterwards
+     * (possibly both, so a status can arrive twice but never out of order).
+     *
+     * @param currentStatus reads the payment's status; its exceptions (e.g. not found) are rethrown
+     */
+    public SseEmitter subscribe(String paymentId, Supplier<PaymentStatusEventDTO> currentStatus) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many open payment event streams");
+        }
+        // compute() keeps add / remove-when-empty atomic per payment
+        AtomicBoolean added = new AtomicBoolean();
+        subscriptions.compute(paymentId, (id, emitters) -> {
+            Set<SseEmitter> set = emitters != null ? emitters : new CopyOnWriteArraySet<>();
+            if (set.size() < maxPerPayment) {
+                added.set(set.add(emitter));
+            }
+            return set.isEmpty() ? null : set;
+        });
+        if (!added.get()) {
+            connections.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many event streams for payment " + paymentId);
+        }
+
+        Runnable cleanup = () -> remove(paymentId, emitter);
+        emitter.onCompletion(cleanup);
+        emitter.onTimeout(cleanup);
+        emitter.onError(error -> cleanup.run());
+
+        // Transitions for this emitter wait until the current status has been read and sent
+        synchronized (emitter) {
+            PaymentStatusEventDTO current;
+            try {
+                current = currentStatus.get();
+            } catch (RuntimeException e) {
+                cleanup.run();
+                throw e;
+            }
+            if (send(emitter, current) && FINAL_STATUSES.contains(current.getStatus())) {
+                emitter.complete();
+            }
+        }
+        return emitter;
+    }
+
+    // After commit, so clients never see a status that was rolled back
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onStatusChanged(PaymentStatusEventDTO event) {
+        Set<SseEmitter> emitters = subscriptions.get(event.getPaymentId());
+        if (emitters == null) {
+            return;
+        }
+        boolean finalStatus = FINAL_STATUSES.contains(event.getStatus());
+        for (SseEmitter emitter : emitters) {
+            synchronized (emitter) {
+                if (send(emitter, event) && finalStatus) {
+                    emitter.complete();
+                }
+            }
+        }
+    }
+
+    // Runs on the payment-events-heartbeat thread: a slow client blocks it, not the shared scheduler
+    void heartbeat() {
+        subscriptions.values().forEach(emitters -> emitters.forEach(emitter -> {
+            try {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+            }
+        }));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeatScheduler.shutdown();
+    }
+
+    private boolean send(SseEmitter emitter, PaymentStatusEventDTO event) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("status")
+                    .id(event.getStatus().name())
+                    .data(event, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; the error callback removes the subscription
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void remove(String paymentId, SseEmitter emitter) {
+        AtomicBoolean removed = new AtomicBoolean();
+        subscriptions.computeIfPresent(paymentId, (id, emitters) -> {
+            removed.set(emitters.remove(emitter));
+            return emitters.isEmpty() ? null : emitters;
+        });
+        if (removed.get()) {
+            connections.decrementAndGet();
+        }
+    }
+}
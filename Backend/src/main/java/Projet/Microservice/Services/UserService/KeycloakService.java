@@ -3,10 +3,15 @@ package Projet.Microservice.Services.UserService;
 
 import Projet.Microservice.DTO.RegisterRequest;
 import Projet.Microservice.Exceptions.UsersExceptions.UserAlreadyExistsException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.core.Response;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
 import org.keycloak.OAuth2Constants;
+import org.keycloak.admin.client.JacksonProvider;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
 import org.keycloak.admin.client.resource.UsersResource;
@@ -14,12 +19,15 @@ import org.keycloak.representations.idm.CredentialRepresentation;
 import org.keycloak.representations.idm.RoleRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
@@ -38,22 +46,60 @@ public class KeycloakService {
     @Value("${keycloak.backend.client-secret}")
     private String clientSecret;
 
+    @Value("${keycloak.backend.admin-client.pool-size:20}")
+    private int connectionPoolSize;
+
+    // The service-account token is renewed once it gets this close to expiry
+    @Value("${keycloak.backend.admin-client.token-min-validity:60s}")
+    private Duration tokenMinValidity;
+
+    // Shared admin client: pooled connections and a service-account token reused across calls
+    private Keycloak keycloak;
+
+    @PostConstruct
+    public void initAdminClient() {
+        ResteasyClientBuilder clientBuilder = (ResteasyClientBuilder) ClientBuilder.newBuilder();
+        clientBuilder.connectionPoolSize(connectionPoolSize)
+                .maxPooledPerRoute(connectionPoolSize)
+                .connectionTTL(5, TimeUnit.MINUTES)
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .register(JacksonProvider.class, 100);
+
+        keycloak = KeycloakBuilder.builder()
+                .serverUrl(serverUrl)
+                .realm(realm)
+                .grantType(OAuth2Constants.CLIENT_CREDENTIALS)
+                .clientId(clientId)
+                .clientSecret(clientSecret)
+                .resteasyClient(clientBuilder.build())
+                .build();
+        keycloak.tokenManager().setMinTokenValidity(tokenMinValidity.toSeconds());
+    }
+
+    @PreDestroy
+    public void closeAdminClient() {
+        if (keycloak != null) keycloak.close();
+    }
+
+    // Renews the service-account token in the background before it expires,
+    // so registration and first-login provisioning never wait for a token grant
+    @Scheduled(fixedDelayString = "${keycloak.backend.admin-client.token-refresh-interval:15000}", initialDelay = 5_000)
+    public void refreshServiceAccountToken() {
+        try {
+            keycloak.tokenManager().getAccessToken();
+        } catch (Exception e) {
+            log.warn("⚠️ Could not refresh Keycloak service-account token: {}", e.getMessage());
+        }
+    }
+
     // =======================
     // USER CREATION METHODS
     // =======================
     public String createUser(RegisterRequest request) {
         printConfiguration();
 
-        Keycloak keycloak = null;
         try {
-            keycloak = KeycloakBuilder.builder()
-                    .serverUrl(serverUrl)
-                    .realm(realm)
-                    .grantType(OAuth2Constants.CLIENT_CREDENTIALS)
-                    .clientId(clientId)
-                    .clientSecret(clientSecret)
-                    .build();
-
             UsersResource usersResource = keycloak.realm(realm).users();
             UserRepresentation user = buildUserRepresentation(request);
 
@@ -91,8 +137,6 @@ public class KeycloakService {
         } catch (Exception e) {
             log.error("❌ Exception during user creation: {}", e.getMessage(), e);
             throw new RuntimeException("Erreur inattendue lors de la création du compte utilisateur.", e);
-        } finally {
-            if (keycloak != null) keycloak.close();
         }
     }
 
@@ -156,7 +200,7 @@ public class KeycloakService {
         }
     }
 
-    private void assignUserRole(Keycloak keycloak, UsersResource usersResource, String userId) {
+    private void assignUserRole(UsersResource usersResource, String userId) {
         try {
             RoleRepresentation role = keycloak.realm(realm).roles().get("user").toRepresentation();
             usersResource.get(userId).roles().realmLevel().add(Collections.singletonList(role));
@@ -235,16 +279,7 @@ public class KeycloakService {
     // Add these methods to your KeycloakService class
 
     public UserRepresentation getUserFromKeycloak(String keycloakId) {
-        Keycloak keycloak = null;
         try {
-            keycloak = KeycloakBuilder.builder()
-                    .serverUrl(serverUrl)
-                    .realm(realm)
-                    .grantType(OAuth2Constants.CLIENT_CREDENTIALS)
-                    .clientId(clientId)
-                    .clientSecret(clientSecret)
-                    .build();
-
             UsersResource usersResource = keycloak.realm(realm).users();
             UserRepresentation user = usersResource.get(keycloakId).toRepresentation();
 
@@ -254,8 +289,6 @@ public class KeycloakService {
         } catch (Exception e) {
             System.err.println("Failed to fetch user from Keycloak: " + e.getMessage());
             return null;
-        } finally {
-            if (keycloak != null) keycloak.close();
         }
     }
 
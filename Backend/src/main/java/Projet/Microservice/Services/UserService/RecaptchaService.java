@@ -1,5 +1,6 @@
 package Projet.Microservice.Services.UserService;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -17,11 +18,16 @@ public class RecaptchaService {
 
     private static final String VERIFY_URL = "https://www.google.com/recaptcha/api/siteverify";
 
+    private final RestTemplate restTemplate;
+
+    public RecaptchaService(@Qualifier("recaptchaRestTemplate") RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
     public boolean verifyToken(String token) {
         if ("dev-mode".equals(token)) {
             return true;
         }
-        RestTemplate restTemplate = new RestTemplate();
 
         MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
         params.add("secret", secretKey);
@@ -0,0 +1,92 @@
+package Projet.Microservice.Services.UserService;
+
+import Projet.Microservice.Entities.UserEntities.UserEntity;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * In-process lookups for the current user.
+ *
+ * The Keycloak subject -> app user ID mapping never changes once the user row exists,
+ * so it is cached without expiry (bounded by size). Caching the UserEntity itself is
+ * optional (app.user-cache.snapshot-ttl > 0) and entries are evicted by UserService
+ * whenever the user row is modified. Inside a transaction the eviction waits for the commit,
+ * otherwise a concurrent lookup could reload the old row and cache it again.
+ * Hit ratios are exposed as cache.* with cache=user.ids / user.snapshots.
+ */
+@Component
+public class UserLookupCache {
+
+    private final Cache<String, Long> userIds;
+    private final Cache<Long, UserEntity> snapshots;
+
+    public UserLookupCache(@Value("${app.user-cache.max-size:10000}") long maxSize,
+                           @Value("${app.user-cache.snapshot-ttl:0s}") Duration snapshotTtl,
+                           MeterRegistry meterRegistry) {
+        this.userIds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, userIds, "user.ids");
+
+        if (snapshotTtl.isZero() || snapshotTtl.isNegative()) {
+            this.snapshots = null;
+        } else {
+            this.snapshots = Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(snapshotTtl)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "user.snapshots");
+        }
+    }
+
+    /**
+     * @param loader returns null when no app user exists yet (nothing is cached in that case)
+     */
+    public Long getUserId(String keycloakId, Function<String, Long> loader) {
+        return userIds.get(keycloakId, loader);
+    }
+
+    public UserEntity getUser(Long userId, Function<Long, UserEntity> loader) {
+        if (snapshots == null) {
+            return loader.apply(userId);
+        }
+        return snapshots.get(userId, loader);
+    }
+
+    public void evictUser(Long userId) {
+        evictUser(userId, null);
+    }
+
+    public void evictUser(Long userId, String keycloakId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evictNow(userId, keycloakId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evictNow(userId, keycloakId);
+            }
+        });
+    }
+
+    private void evictNow(Long userId, String keycloakId) {
+        if (snapshots != null) {
+            snapshots.invalidate(userId);
+        }
+        if (keycloakId != null) {
+            userIds.invalidate(keycloakId);
+        }
+    }
+}
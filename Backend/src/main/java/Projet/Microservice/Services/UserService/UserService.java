@@ -35,6 +35,9 @@ public class UserService {
     @Autowired
     private KeycloakService keycloakService;
 
+    @Autowired
+    private UserLookupCache userLookupCache;
+
     // ======== Keycloak / Current User Helpers ========
 
     private Jwt getJwt() {
@@ -51,9 +54,13 @@ public class UserService {
 
     public Long getCurrentAppUserId() {
         String keycloakId = getCurrentKeycloakId();
-        return userRepository.findByKeycloakId(keycloakId)
+        Long userId = userLookupCache.getUserId(keycloakId, id -> userRepository.findByKeycloakId(id)
                 .map(UserEntity::getId)
-                .orElseThrow(() -> new RuntimeException("App user not found for Keycloak ID: " + keycloakId));
+                .orElse(null));
+        if (userId == null) {
+            throw new RuntimeException("App user not found for Keycloak ID: " + keycloakId);
+        }
+        return userId;
     }
     public UserEntity ensureCurrentUserFromToken() {
         try {
@@ -94,6 +101,7 @@ public class UserService {
                 }
 
                 if (updated) {
+                    userLookupCache.evictUser(existingUser.getId());
                     return userRepository.save(existingUser);
                 }
 
@@ -213,8 +221,11 @@ public class UserService {
 
     public UserEntity getCurrentUser() {
         Long userId = getCurrentAppUserId();
-        return userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        UserEntity user = userLookupCache.getUser(userId, id -> userRepository.findById(id).orElse(null));
+        if (user == null) {
+            throw new RuntimeException("User not found");
+        }
+        return user;
     }
 
     // ======== User Operations (internal / reused) ========
@@ -247,6 +258,9 @@ public class UserService {
         user.setPendingDeposits(pendingDeposits);
         user.setBannedUntil(bannedUntil);
 
+        if (user.getId() != null) {
+            userLookupCache.evictUser(user.getId());
+        }
         return userRepository.save(user);
     }
 
@@ -263,6 +277,7 @@ public class UserService {
         if (request.getPostalNumber() != null) user.setPostalNumber(request.getPostalNumber());
         if (request.getBirthDate() != null) user.setBirthDate(request.getBirthDate());
 
+        userLookupCache.evictUser(userId);
         return userRepository.save(user);
     }
 
@@ -272,6 +287,7 @@ public class UserService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         user.setTermsAccepted(true);
+        userLookupCache.evictUser(userId);
         return userRepository.save(user);
     }
 
@@ -320,6 +336,7 @@ public class UserService {
         UserEntity user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
         userRepository.delete(user);
+        userLookupCache.evictUser(userId, user.getKeycloakId());
     }
 
     @Transactional
@@ -328,28 +345,10 @@ public class UserService {
             throw new IllegalArgumentException("Amount must be positive");
         }
 
-        UserEntity user = userRepository.findById(userId)
+        // Add to both balance and withdrawable balance for admin credits (audit written by the same statement)
+        userRepository.creditBalanceWithAudit(userId, amount, adminId, LocalDateTime.now())
                 .orElseThrow(() -> new RuntimeException("User not found"));
-
-        BigDecimal oldBalance = user.getBalance();
-        BigDecimal oldWithdrawable = user.getWithdrawableBalance();
-
-        // Add to both balance and withdrawable balance for admin credits
-        user.setBalance(user.getBalance().add(amount));
-        user.setWithdrawableBalance(user.getWithdrawableBalance().add(amount));
-        userRepository.save(user);
-
-        // Update audit details
-        UserManagementAudit audit = new UserManagementAudit();
-        audit.setUserId(userId);
-        audit.setAdminId(adminId);
-        audit.setAction(UserAction.CREDIT);
-        audit.setDetails("Credited " + amount + " | Previous balance: " + oldBalance +
-                " | New balance: " + user.getBalance() +
-                " | Previous withdrawable: " + oldWithdrawable +
-                " | New withdrawable: " + user.getWithdrawableBalance());
-        audit.setTimestamp(LocalDateTime.now());
-        userManagementAuditRepository.save(audit);
+        userLookupCache.evictUser(userId);
     }
 
     @Transactional
@@ -358,11 +357,10 @@ public class UserService {
             throw new IllegalArgumentException("Amount must be positive");
         }
 
-        UserEntity user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        // Check against withdrawable balance for debits
-        if (user.getWithdrawableBalance().compareTo(amount) < 0) {
+        // Deduct from both balance and withdrawable balance, only if enough is withdrawable
+        if (userRepository.debitBalanceWithAudit(userId, amount, adminId, LocalDateTime.now()).isEmpty()) {
+            UserEntity user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
             throw new InsufficientBalanceException(
                     String.valueOf(userId),
                     amount.toPlainString(),
@@ -370,26 +368,7 @@ public class UserService {
                     "You don't have enough withdrawable balance to perform this debit"
             );
         }
-
-        BigDecimal oldBalance = user.getBalance();
-        BigDecimal oldWithdrawable = user.getWithdrawableBalance();
-
-        // Deduct from both balance and withdrawable balance
-        user.setBalance(user.getBalance().subtract(amount));
-        user.setWithdrawableBalance(user.getWithdrawableBalance().subtract(amount));
-        userRepository.save(user);
-
-        // Update audit details
-        UserManagementAudit audit = new UserManagementAudit();
-        audit.setUserId(userId);
-        audit.setAdminId(adminId);
-        audit.setAction(UserAction.DEBIT);
-        audit.setDetails("Debited " + amount + " | Previous balance: " + oldBalance +
-                " | New balance: " + user.getBalance() +
-                " | Previous withdrawable: " + oldWithdrawable +
-                " | New withdrawable: " + user.getWithdrawableBalance());
-        audit.setTimestamp(LocalDateTime.now());
-        userManagementAuditRepository.save(audit);
+        userLookupCache.evictUser(userId);
     }
 
 
@@ -465,12 +444,10 @@ public class UserService {
     }
     @Transactional
     public void refundUser(Long userId, BigDecimal amount) {
-        UserEntity user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        user.setBalance(user.getBalance().add(amount));
-        user.setWithdrawableBalance(user.getWithdrawableBalance().add(amount));
-        userRepository.save(user);
+        if (userRepository.addToBalance(userId, amount) == 0) {
+            throw new RuntimeException("User not found");
+        }
+        userLookupCache.evictUser(userId);
     }
 
     @Transactional
@@ -480,6 +457,7 @@ public class UserService {
 
         user.setBannedUntil(LocalDateTime.now().plusDays(days));
         userRepository.save(user);
+        userLookupCache.evictUser(userId);
 
         UserManagementAudit audit = new UserManagementAudit();
         audit.setUserId(userId);
@@ -498,6 +476,7 @@ public class UserService {
 
         user.setActive(false);
         userRepository.save(user);
+        userLookupCache.evictUser(userId);
 
         UserManagementAudit audit = new UserManagementAudit();
         audit.setUserId(userId);
@@ -526,6 +505,7 @@ public class UserService {
         user.setActive(true);
         user.setBannedUntil(null);
         userRepository.save(user);
+        userLookupCache.evictUser(userId);
 
         // Log audit
         UserManagementAudit audit = new UserManagementAudit();
@@ -0,0 +1,5 @@
+-- Outbox ids are handed out one at a time instead of in per-instance blocks of 50. The relay
+-- publishes in id order; with blocks, a later status change made on one instance could get a
+-- lower id than an earlier one made on another. The sequence's current value is above every id
+-- already issued from a block, so existing ids stay unique.
+alter sequence payment_outbox_seq increment by 1;
@@ -0,0 +1,123 @@
+-- Schema as previously generated by Hibernate (ddl-auto=update).
+-- Existing databases are baselined at this version (spring.flyway.baseline-on-migrate) and skip it,
+-- so anything added later goes into a later migration written to run on both (if not exists).
+
+create table users (
+    id                   bigint generated by default as identity primary key,
+    keycloak_id          varchar(255) unique,
+    username             varchar(255),
+    email                varchar(255),
+    first_name           varchar(255),
+    last_name            varchar(255),
+    phone                varchar(255),
+    address              varchar(255),
+    country              varchar(255),
+    postal_number        varchar(255),
+    birth_date           date,
+    referral_code        varchar(255),
+    active               boolean        not null,
+    terms_accepted       boolean        not null,
+    banned_until         timestamp(6),
+    balance              numeric(10, 2) not null,
+    withdrawable_balance numeric(10, 2) not null,
+    bonus_balance        numeric(10, 2) not null,
+    pending_deposits     numeric(10, 2) not null,
+    pending_withdrawals  numeric(10, 2) not null
+);
+
+create table payments (
+    id                      bigint generated by default as identity primary key,
+    payment_id              varchar(255)                not null unique,
+    booking_id              varchar(255)                not null unique,
+    user_id                 bigint                      not null,
+    amount                  numeric(10, 2)              not null,
+    currency                varchar(3)                  not null
+        check (currency in ('USD', 'EUR', 'TND', 'GBP', 'JPY', 'CAD')),
+    payment_method          varchar(255)                not null
+        check (payment_method in ('CREDIT_CARD', 'DEBIT_CARD', 'PAYPAL', 'STRIPE', 'BANK_TRANSFER', 'GIFT_CARD', 'LOYALTY_POINTS')),
+    payment_status          varchar(255)                not null
+        check (payment_status in ('CREATED', 'PENDING', 'COMPLETED', 'FAILED', 'CANCELLED', 'EXPIRED', 'REFUNDED',
+                                  'PARTIALLY_REFUNDED')),
+    provider_transaction_id varchar(255),
+    payment_token           varchar(255),
+    description             varchar(255),
+    failure_reason          varchar(255),
+    processed_at            timestamp(6) with time zone,
+    expires_at              timestamp(6) with time zone,
+    amount_in_usd           numeric(10, 2),
+    created_at              timestamp(6) with time zone not null,
+    updated_at              timestamp(6) with time zone,
+    created_by              varchar(255),
+    updated_by              varchar(255)
+);
+
+create table refunds (
+    id                 bigint generated by default as identity primary key,
+    refund_id          varchar(255)                not null unique,
+    payment_id         bigint                      not null,
+    amount             numeric(10, 2)              not null,
+    currency           varchar(3)                  not null,
+    refund_status      varchar(255)                not null
+        check (refund_status in ('REQUESTED', 'PENDING', 'APPROVED', 'PROCESSING', 'COMPLETED', 'REJECTED')),
+    reason             varchar(255),
+    provider_refund_id varchar(255),
+    requested_by       varchar(255),
+    processed_at       timestamp(6),
+    created_at         timestamp(6) with time zone not null,
+    updated_at         timestamp(6) with time zone,
+    created_by         varchar(255),
+    updated_by         varchar(255)
+);
+
+create table payment_transaction_hisotry (
+    id                    bigint generated by default as identity primary key,
+    payment_id            varchar(255)                not null,
+    transaction_type      varchar(255)                not null,
+    old_status            varchar(255),
+    new_status            varchar(255),
+    provider_response     text,
+    error_message         varchar(255),
+    transaction_timestamp timestamp(6),
+    created_at            timestamp(6) with time zone not null,
+    updated_at            timestamp(6) with time zone,
+    created_by            varchar(255),
+    updated_by            varchar(255)
+);
+
+create table user_management_audit (
+    id        bigint generated by default as identity primary key,
+    user_id   bigint,
+    admin_id  bigint,
+    action    varchar(255)
+        check (action in ('CREDIT', 'DEBIT', 'TEMP_BAN', 'PERMANENT_BAN', 'UNBAN')),
+    reason    varchar(255)
+        check (reason in ('CHEATING', 'HARASSMENT', 'SPAM', 'INAPPROPRIATE_CONTENT', 'MULTIPLE_ACCOUNTS', 'PAYMENT_FRAUD',
+                          'SECURITY_THREAT', 'VIOLATION_OF_RULES', 'OTHER')),
+    details   varchar(1000),
+    timestamp timestamp(6)
+);
+
+create table referral_code (
+    id              bigint generated by default as identity primary key,
+    code            varchar(255) not null,
+    expiration_date date,
+    used            boolean      not null
+);
+
+create sequence user_history_seq start with 1 increment by 50;
+
+create table user_history (
+    id               bigint           not null primary key,
+    user_id          bigint,
+    total_sessions   integer          not null,
+    won_sessions     integer          not null,
+    total_winnings   numeric(38, 2),
+    total_spent      numeric(38, 2),
+    average_accuracy float(53)        not null,
+    recorded_at      timestamp(6)
+);
+
+-- Foreign key names as generated by Hibernate, so baselined databases match fresh ones
+alter table payments add constraint FKj94hgy9v5fw1munb90tar2eje foreign key (user_id) references users;
+alter table refunds add constraint FKpt9ic0j1y6xwlej99wnynvnpy foreign key (payment_id) references payments;
+alter table user_history add constraint FKd8f7md75uuycl5mgtl394nqoi foreign key (user_id) references users;
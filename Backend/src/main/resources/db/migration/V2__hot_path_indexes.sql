@@ -0,0 +1,42 @@
+-- The baseline, like databases Hibernate created before INITIATING / CAPTURING existed, has a check constraint
+-- without them; ddl-auto=update never altered it.
+alter table payments drop constraint if exists payments_payment_status_check;
+alter table payments add constraint payments_payment_status_check
+    check (payment_status in ('CREATED', 'INITIATING', 'PENDING', 'CAPTURING', 'COMPLETED', 'FAILED', 'CANCELLED',
+                              'EXPIRED', 'REFUNDED', 'PARTIALLY_REFUNDED'));
+
+-- ======== payments ========
+
+-- User history, newest first (findByUser_IdOrderByCreatedAtDesc, keyset findHistory*)
+create index if not exists idx_payments_user_created on payments (user_id, created_at desc, id desc);
+
+-- "Has an open payment" check in createPayment (existsByUser_IdAndPaymentStatusIn)
+create index if not exists idx_payments_user_open on payments (user_id)
+    where payment_status in ('CREATED', 'INITIATING', 'PENDING', 'CAPTURING');
+
+-- Expiry job (expireDuePayments, findExpiredPayments): only open payments are indexed
+create index if not exists idx_payments_open_expires_at on payments (expires_at)
+    where payment_status in ('CREATED', 'PENDING');
+
+-- Nightly purge of EXPIRED payments, walked in id order (purgeExpiredChunk, findByPaymentStatusAndCreatedAtBefore)
+create index if not exists idx_payments_expired_id on payments (id, created_at)
+    where payment_status = 'EXPIRED';
+
+-- Recovery of payments stuck mid-step (releaseStuckPayments, findByPaymentStatusAndUpdatedAtBefore)
+create index if not exists idx_payments_in_flight_updated on payments (payment_status, updated_at)
+    where payment_status in ('INITIATING', 'CAPTURING');
+
+create index if not exists idx_payments_provider_transaction_id on payments (provider_transaction_id);
+
+-- ======== refunds ========
+
+-- Foreign key lookups: refunds of a payment, purge cascade
+create index if not exists idx_refunds_payment_id on refunds (payment_id, created_at desc);
+
+create index if not exists idx_refunds_status_created on refunds (refund_status, created_at);
+
+-- ======== user_management_audit ========
+
+create index if not exists idx_user_management_audit_user on user_management_audit (user_id, action);
+
+create index if not exists idx_user_management_audit_admin on user_management_audit (admin_id, action);
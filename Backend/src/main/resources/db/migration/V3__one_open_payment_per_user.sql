@@ -0,0 +1,23 @@
+-- At most one open payment per user, enforced by the database instead of a check-then-insert
+-- in PaymentService.createPayment (PaymentRepository.insertIfNoConflict relies on it).
+
+-- Concurrent creates could previously leave a user with several open payments. Expire the extra
+-- CREATED ones (nothing was sent to a provider yet): a CREATED payment is kept only when it is the
+-- user's most recent open payment and no payment of the user is already with the provider.
+update payments p
+set payment_status = 'EXPIRED',
+    failure_reason = 'Superseded by another open payment',
+    updated_at     = now()
+where p.payment_status = 'CREATED'
+  and exists (select 1
+              from payments other
+              where other.user_id = p.user_id
+                and other.id <> p.id
+                and (other.payment_status in ('INITIATING', 'PENDING', 'CAPTURING')
+                    or (other.payment_status = 'CREATED' and (other.created_at, other.id) > (p.created_at, p.id))));
+
+-- Replaces the plain partial index from V2, which served the same lookup
+drop index if exists idx_payments_user_open;
+
+create unique index uk_payments_user_open on payments (user_id)
+    where payment_status in ('CREATED', 'INITIATING', 'PENDING', 'CAPTURING');
@@ -0,0 +1,13 @@
+-- Responses saved for requests carrying an Idempotency-Key header (IdempotencyFilter).
+-- key_hash is SHA-256 over caller + endpoint + key; request_hash detects a key reused with another body.
+create table idempotency_keys (
+    key_hash     varchar(64)                 not null primary key,
+    request_hash varchar(64)                 not null,
+    status_code  integer                     not null,
+    content_type varchar(255),
+    body         bytea                       not null,
+    created_at   timestamp(6) with time zone not null,
+    expires_at   timestamp(6) with time zone not null
+);
+
+create index idx_idempotency_keys_expires_at on idempotency_keys (expires_at);
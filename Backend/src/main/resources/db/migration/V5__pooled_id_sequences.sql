@@ -0,0 +1,30 @@
+-- Payments, refunds, transaction history, users and the admin audit move from IDENTITY columns to
+-- pooled sequences (increment 50) so Hibernate can assign IDs up front and batch the INSERTs.
+-- Hibernate treats each nextval as the top of a block of 50 IDs, so every sequence starts 50 above
+-- the current max(id). The columns default to the sequence, which keeps native INSERTs without an
+-- id (PaymentRepository.insertIfNoConflict, the UserRepository audit CTEs) on the same numbering.
+
+create sequence payments_seq increment by 50 owned by payments.id;
+select setval('payments_seq', coalesce((select max(id) from payments), 0) + 50, false);
+alter table payments alter column id drop identity if exists;
+alter table payments alter column id set default nextval('payments_seq');
+
+create sequence refunds_seq increment by 50 owned by refunds.id;
+select setval('refunds_seq', coalesce((select max(id) from refunds), 0) + 50, false);
+alter table refunds alter column id drop identity if exists;
+alter table refunds alter column id set default nextval('refunds_seq');
+
+create sequence payment_transaction_hisotry_seq increment by 50 owned by payment_transaction_hisotry.id;
+select setval('payment_transaction_hisotry_seq', coalesce((select max(id) from payment_transaction_hisotry), 0) + 50, false);
+alter table payment_transaction_hisotry alter column id drop identity if exists;
+alter table payment_transaction_hisotry alter column id set default nextval('payment_transaction_hisotry_seq');
+
+create sequence users_seq increment by 50 owned by users.id;
+select setval('users_seq', coalesce((select max(id) from users), 0) + 50, false);
+alter table users alter column id drop identity if exists;
+alter table users alter column id set default nextval('users_seq');
+
+create sequence user_management_audit_seq increment by 50 owned by user_management_audit.id;
+select setval('user_management_audit_seq', coalesce((select max(id) from user_management_audit), 0) + 50, false);
+alter table user_management_audit alter column id drop identity if exists;
+alter table user_management_audit alter column id set default nextval('user_management_audit_seq');
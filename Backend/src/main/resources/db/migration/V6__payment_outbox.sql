@@ -0,0 +1,14 @@
+-- Transactional outbox: one row per payment status change, written in the transaction that made
+-- the change and deleted by PaymentOutboxRelay once Kafka acknowledged it.
+create sequence payment_outbox_seq increment by 50;
+
+create table payment_outbox (
+    id         bigint                      not null default nextval('payment_outbox_seq') primary key,
+    payment_id varchar(255)                not null,
+    booking_id varchar(255)                not null,
+    status     varchar(255)                not null,
+    payload    text                        not null,
+    created_at timestamp(6) with time zone not null
+);
+
+alter sequence payment_outbox_seq owned by payment_outbox.id;
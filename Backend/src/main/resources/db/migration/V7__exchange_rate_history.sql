@@ -0,0 +1,13 @@
+-- Daily exchange rate history (ExchangeRateHistory). Databases that ran with ddl-auto=update
+-- already have the table, fresh and baselined ones get it here.
+create table if not exists exchange_rate_history (
+    id            bigint generated by default as identity primary key,
+    rate_date     date                        not null,
+    base_currency varchar(3)                  not null
+        check (base_currency in ('USD', 'EUR', 'TND', 'GBP', 'JPY', 'CAD')),
+    currency      varchar(3)                  not null
+        check (currency in ('USD', 'EUR', 'TND', 'GBP', 'JPY', 'CAD')),
+    rate          numeric(19, 10)             not null,
+    recorded_at   timestamp(6) with time zone not null,
+    constraint uk_exchange_rate_history_day unique (rate_date, base_currency, currency)
+);
@@ -0,0 +1,8 @@
+-- A key is claimed in the database before its request runs, so duplicates arriving on other
+-- instances wait instead of executing it again. A claim is a row without a response yet
+-- (completed_at null) whose expires_at is the end of its lease.
+alter table idempotency_keys alter column status_code drop not null;
+alter table idempotency_keys alter column body drop not null;
+alter table idempotency_keys add column if not exists completed_at timestamp(6) with time zone;
+
+update idempotency_keys set completed_at = created_at where completed_at is null;
@@ -0,0 +1,5 @@
+-- Rate each payment's amount_in_usd was computed with, and when the rate was fetched.
+-- Rows created before this migration keep nulls: their rate was not recorded.
+alter table payments
+    add column if not exists usd_rate            numeric(19, 10),
+    add column if not exists usd_rate_fetched_at timestamp(6) with time zone;
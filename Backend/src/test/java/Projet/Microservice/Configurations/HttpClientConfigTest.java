@@ -0,0 +1,90 @@
+package Projet.Microservice.Configurations;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpClientConfigTest {
+
+    private final HttpClientConfig config = new HttpClientConfig();
+    private final ScheduledExecutorService timer = config.httpDeadlineTimer();
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/fast", exchange -> {
+            byte[] body = "ok".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        // One byte every 100 ms for 5 s: never idle long enough for read-timeout to fire
+        server.createContext("/trickle", exchange -> {
+            exchange.sendResponseHeaders(200, 50);
+            try (OutputStream body = exchange.getResponseBody()) {
+                for (int i = 0; i < 50; i++) {
+                    body.write('x');
+                    body.flush();
+                    Thread.sleep(100);
+                }
+            } catch (IOException | InterruptedException e) {
+                // Client gave up
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        timer.shutdownNow();
+    }
+
+    @Test
+    void slowDripResponseIsCutOffAtTheDeadline() {
+        RestTemplate restTemplate = restTemplate(Duration.ofMillis(500));
+
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> restTemplate.getForObject(url("/trickle"), String.class))
+                .isInstanceOf(RestClientException.class)
+                .hasRootCauseInstanceOf(IOException.class);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void callsWithinTheDeadlineAreUnaffected() throws Exception {
+        RestTemplate restTemplate = restTemplate(Duration.ofMillis(300));
+
+        assertThat(restTemplate.getForObject(url("/fast"), String.class)).isEqualTo("ok");
+        // The pending cancel fires on a finished call, which must leave the pooled connection usable
+        Thread.sleep(400);
+        assertThat(restTemplate.getForObject(url("/fast"), String.class)).isEqualTo("ok");
+    }
+
+    private RestTemplate restTemplate(Duration deadline) {
+        return config.pooledRestTemplate(new RestTemplateBuilder(), new SimpleMeterRegistry(), "test", 2,
+                Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1), deadline, timer);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
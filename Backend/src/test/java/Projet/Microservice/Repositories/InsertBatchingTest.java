@@ -0,0 +1,129 @@
+package Projet.Microservice.Repositories;
+
+import Projet.Microservice.Entities.AdminEntities.UserAction;
+import Projet.Microservice.Entities.AdminEntities.UserManagementAudit;
+import Projet.Microservice.Entities.Currency;
+import Projet.Microservice.Entities.Payment;
+import Projet.Microservice.Entities.PaymentMethod;
+import Projet.Microservice.Entities.PaymentStatus;
+import Projet.Microservice.Entities.UserEntities.UserEntity;
+import Projet.Microservice.PostgresTestSupport;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bulk-creates payments and audit rows with JDBC batching as configured (pooled sequences,
+ * hibernate.jdbc.batch_size) and with batching turned off, which is what IDENTITY IDs forced,
+ * and compares the statements sent. Timings are logged for reference only.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Slf4j
+class InsertBatchingTest extends PostgresTestSupport {
+
+    private static final int ROWS = 1000;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void batchedInsertsNeedFarFewerStatements() {
+        UserEntity user = newUser();
+        // Warm-up, so both measured runs start with loaded metadata and open sequence blocks
+        insert(user, 100, null);
+
+        long unbatched = insert(user, ROWS, 1);
+        long batched = insert(user, ROWS, null);
+
+        // One INSERT per row without batching; one per 50 rows of each entity (plus a sequence
+        // call per 50 IDs) with it
+        assertThat(unbatched).isGreaterThanOrEqualTo(2L * ROWS);
+        assertThat(batched).isLessThanOrEqualTo(2L * ROWS / 50 * 2 + 4);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from payments where user_id = ?",
+                Long.class, user.getId())).isEqualTo(2L * ROWS + 100);
+    }
+
+    // Persists rows payments and rows audit entries in one transaction; returns the statements prepared
+    private long insert(UserEntity user, int rows, Integer jdbcBatchSize) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        long started = System.nanoTime();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            if (jdbcBatchSize != null) {
+                entityManager.unwrap(Session.class).setJdbcBatchSize(jdbcBatchSize);
+            }
+            UserEntity owner = entityManager.getReference(UserEntity.class, user.getId());
+            Instant now = Instant.now();
+            for (int i = 0; i < rows; i++) {
+                entityManager.persist(newPayment(owner, now));
+                UserManagementAudit audit = new UserManagementAudit();
+                audit.setUserId(user.getId());
+                audit.setAdminId(1L);
+                audit.setAction(UserAction.CREDIT);
+                audit.setDetails("bulk " + i);
+                entityManager.persist(audit);
+            }
+        });
+        long statements = statistics.getPrepareStatementCount();
+        log.info("{} payments + {} audit rows, batch size {}: {} statements in {} ms", rows, rows,
+                jdbcBatchSize == null ? "configured" : jdbcBatchSize, statements,
+                (System.nanoTime() - started) / 1_000_000);
+        return statements;
+    }
+
+    private UserEntity newUser() {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            UserEntity user = new UserEntity();
+            user.setKeycloakId(UUID.randomUUID().toString());
+            user.setUsername("bulk-" + user.getKeycloakId());
+            entityManager.persist(user);
+            return user;
+        });
+    }
+
+    private static Payment newPayment(UserEntity owner, Instant now) {
+        Payment payment = Payment.builder()
+                .paymentId("PAY-" + UUID.randomUUID())
+                .bookingId("BK-" + UUID.randomUUID())
+                .amount(new BigDecimal("120.00"))
+                .currency(Currency.EUR)
+                .paymentMethod(PaymentMethod.PAYPAL)
+                .paymentStatus(PaymentStatus.COMPLETED)
+                .expiresAt(now.plusSeconds(1800))
+                .amountInUSD(new BigDecimal("130.00"))
+                .user(owner)
+                .build();
+        payment.setCreatedAt(now);
+        payment.setUpdatedAt(now);
+        return payment;
+    }
+}
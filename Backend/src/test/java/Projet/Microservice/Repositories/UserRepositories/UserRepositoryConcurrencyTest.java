@@ -0,0 +1,133 @@
+package Projet.Microservice.Repositories.UserRepositories;
+
+import Projet.Microservice.Entities.UserEntities.UserEntity;
+import Projet.Microservice.PostgresTestSupport;
+import Projet.Microservice.Repositories.UserRepositories.UserRepository.BalanceSnapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Credits and debits racing on the same user: every statement must see the latest balance,
+ * no update may be lost and withdrawable_balance must never go below zero.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserRepositoryConcurrencyTest extends PostgresTestSupport {
+
+    private static final int THREADS = 16;
+    private static final Long ADMIN_ID = 1L;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void concurrentCreditsAreAllApplied() throws Exception {
+        Long userId = newUser(BigDecimal.ZERO);
+        int credits = 200;
+
+        List<Optional<BalanceSnapshot>> results = runConcurrently(credits,
+                () -> userRepository.creditBalanceWithAudit(userId, new BigDecimal("1.50"), ADMIN_ID, LocalDateTime.now()));
+
+        assertThat(results).allMatch(Optional::isPresent);
+        UserEntity user = userRepository.findById(userId).orElseThrow();
+        assertThat(user.getBalance()).isEqualByComparingTo("300.00");
+        assertThat(user.getWithdrawableBalance()).isEqualByComparingTo("300.00");
+        assertThat(auditRows(userId, "CREDIT")).isEqualTo(credits);
+    }
+
+    @Test
+    void concurrentDebitsNeverOverdraw() throws Exception {
+        Long userId = newUser(new BigDecimal("50.00"));
+        int debits = 200;
+
+        List<Optional<BalanceSnapshot>> results = runConcurrently(debits,
+                () -> userRepository.debitBalanceWithAudit(userId, BigDecimal.ONE, ADMIN_ID, LocalDateTime.now()));
+
+        assertThat(results.stream().filter(Optional::isPresent)).hasSize(50);
+        assertThat(results.stream().flatMap(Optional::stream))
+                .allSatisfy(snapshot -> assertThat(snapshot.getWithdrawableBalance()).isNotNegative());
+        UserEntity user = userRepository.findById(userId).orElseThrow();
+        assertThat(user.getBalance()).isEqualByComparingTo("0.00");
+        assertThat(user.getWithdrawableBalance()).isEqualByComparingTo("0.00");
+        assertThat(auditRows(userId, "DEBIT")).isEqualTo(50);
+    }
+
+    @Test
+    void interleavedCreditsAndDebitsBalanceOut() throws Exception {
+        // Enough for every debit to succeed whatever the interleaving
+        Long userId = newUser(new BigDecimal("150.00"));
+        AtomicInteger next = new AtomicInteger();
+
+        List<Optional<BalanceSnapshot>> results = runConcurrently(300, () -> next.getAndIncrement() % 2 == 0
+                ? userRepository.creditBalanceWithAudit(userId, new BigDecimal("2.00"), ADMIN_ID, LocalDateTime.now())
+                : userRepository.debitBalanceWithAudit(userId, BigDecimal.ONE, ADMIN_ID, LocalDateTime.now()));
+
+        assertThat(results).allMatch(Optional::isPresent);
+        // 150 credits of 2.00 and 150 debits of 1.00
+        UserEntity user = userRepository.findById(userId).orElseThrow();
+        assertThat(user.getBalance()).isEqualByComparingTo("300.00");
+        assertThat(user.getWithdrawableBalance()).isEqualByComparingTo("300.00");
+    }
+
+    private Long newUser(BigDecimal balance) {
+        UserEntity user = new UserEntity();
+        user.setKeycloakId(UUID.randomUUID().toString());
+        user.setUsername("concurrency-" + user.getKeycloakId());
+        user.setBalance(balance);
+        user.setWithdrawableBalance(balance);
+        return userRepository.save(user).getId();
+    }
+
+    private int auditRows(Long userId, String action) {
+        return jdbcTemplate.queryForObject(
+                "select count(*) from user_management_audit where user_id = ? and action = ?",
+                Integer.class, userId, action);
+    }
+
+    // All tasks are released at once so the statements really overlap on the row lock
+    private <T> List<T> runConcurrently(int tasks, Callable<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < tasks; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
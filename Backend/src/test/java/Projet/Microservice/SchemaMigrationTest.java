@@ -0,0 +1,179 @@
+package Projet.Microservice;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Flyway migrations on a fresh database and on one baselined from the Hibernate-generated schema,
+ * and the hot-path queries' plans (EXPLAIN) on a realistically sized, analyzed data set.
+ */
+class SchemaMigrationTest extends PostgresTestSupport {
+
+    private static JdbcTemplate fresh;
+
+    @BeforeAll
+    static void migrateAndSeed() {
+        DataSource dataSource = newDatabase("schema_fresh");
+        migrate(dataSource);
+        fresh = new JdbcTemplate(dataSource);
+        seed(fresh);
+    }
+
+    @Test
+    void baselinedDatabaseGetsObjectsAddedAfterTheBaseline() throws IOException {
+        DataSource dataSource = newDatabase("schema_baselined");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        // What ddl-auto=update had created before Flyway took over
+        jdbc.execute(new ClassPathResource("db/migration/V1__baseline_schema.sql").getContentAsString(StandardCharsets.UTF_8));
+
+        Flyway flyway = migrate(dataSource);
+
+        MigrationInfo baseline = flyway.info().applied()[0];
+        assertThat(baseline.getType().isBaseline()).isTrue();
+        assertThat(jdbc.queryForObject("select to_regclass('exchange_rate_history') is not null", Boolean.class)).isTrue();
+        assertThat(jdbc.queryForObject("select to_regclass('payment_outbox') is not null", Boolean.class)).isTrue();
+        jdbc.update("insert into users (active, terms_accepted, balance, withdrawable_balance, bonus_balance, "
+                + "pending_deposits, pending_withdrawals) values (true, true, 0, 0, 0, 0, 0)");
+        jdbc.update("insert into payments (payment_id, booking_id, user_id, amount, currency, payment_method, "
+                + "payment_status, created_at) select 'PAY-B1', 'BK-B1', id, 10, 'USD', 'PAYPAL', 'CAPTURING', now() from users");
+        jdbc.update("insert into exchange_rate_history (rate_date, base_currency, currency, rate, recorded_at) "
+                + "values (current_date, 'USD', 'EUR', 0.9, now())");
+    }
+
+    @Test
+    void historyPagesUseUserCreatedIndex() {
+        assertUsesIndex("""
+                select * from payments where user_id = 42 order by created_at desc, id desc limit 21
+                """, "idx_payments_user_created");
+        assertUsesIndex("""
+                select * from payments where user_id = 42 and (created_at, id) < (now() - interval '3 days', 1000000)
+                order by created_at desc, id desc limit 21
+                """, "idx_payments_user_created");
+    }
+
+    @Test
+    void openPaymentLookupUsesUniquePartialIndex() {
+        assertUsesIndex("""
+                select 1 from payments where user_id = 42
+                  and payment_status in ('CREATED', 'INITIATING', 'PENDING', 'CAPTURING')
+                """, "uk_payments_user_open");
+    }
+
+    // Either partial index keeps the scan to open rows; which one wins depends on the statistics
+    @Test
+    void expiryUsesOpenPaymentIndex() {
+        assertUsesIndex("""
+                select id from payments
+                where payment_status in ('CREATED', 'PENDING') and expires_at < now()
+                order by id limit 500 for update skip locked
+                """, "idx_payments_open_expires_at", "uk_payments_user_open");
+    }
+
+    @Test
+    void purgeUsesExpiredIdIndex() {
+        assertUsesIndex("""
+                select id from payments
+                where payment_status = 'EXPIRED' and created_at < now() - interval '30 days' and id > 0
+                order by id limit 1000
+                """, "idx_payments_expired_id");
+    }
+
+    // As above, for the few in-flight rows
+    @Test
+    void recoveryUsesOpenPaymentIndex() {
+        assertUsesIndex("""
+                update payments set payment_status = 'CREATED'
+                where payment_status = 'INITIATING' and updated_at < now() - interval '5 minutes'
+                """, "idx_payments_in_flight_updated", "uk_payments_user_open");
+    }
+
+    @Test
+    void lookupsByPaymentAndProviderIdUseIndexes() {
+        assertUsesIndex("select * from payments where payment_id = 'PAY-00000000500'", "payments_payment_id_key");
+        assertUsesIndex("select * from payments where provider_transaction_id = 'ORDER-500'",
+                "idx_payments_provider_transaction_id");
+    }
+
+    @Test
+    void refundsAndAuditUseIndexes() {
+        assertUsesIndex("select * from refunds where payment_id = 500 order by created_at desc", "idx_refunds_payment_id");
+        assertUsesIndex("select * from user_management_audit where user_id = 42 and action = 'CREDIT'",
+                "idx_user_management_audit_user");
+    }
+
+    @Test
+    void idempotencyCleanupUsesExpiresAtIndex() {
+        assertUsesIndex("""
+                select key_hash from idempotency_keys where expires_at < now() - interval '1 day' limit 1000
+                """, "idx_idempotency_keys_expires_at");
+    }
+
+    private static Flyway migrate(DataSource dataSource) {
+        Flyway flyway = Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load();
+        flyway.migrate();
+        return flyway;
+    }
+
+    // 2,000 users with 10 payments each: mostly settled, 30% expired, one open payment per user
+    // (one in sixty of them overdue) and a handful in flight
+    private static void seed(JdbcTemplate jdbc) {
+        jdbc.update("""
+                insert into users (keycloak_id, active, terms_accepted, balance, withdrawable_balance, bonus_balance,
+                                   pending_deposits, pending_withdrawals)
+                select 'kc-' || n, true, true, 0, 0, 0, 0, 0 from generate_series(1, 2000) n
+                """);
+        jdbc.update("""
+                insert into payments (payment_id, booking_id, user_id, amount, currency, payment_method, payment_status,
+                                      provider_transaction_id, expires_at, created_at, updated_at)
+                select 'PAY-' || lpad(n::text, 11, '0'), 'BK-' || n, u.id, 10, 'USD', 'PAYPAL',
+                       case when n % 10 = 0 and n % 1000 = 0 then 'INITIATING'
+                            when n % 10 = 0 and n % 100 = 0 then 'PENDING'
+                            when n % 10 = 0 then 'CREATED'
+                            when n % 10 < 3 then 'EXPIRED'
+                            else 'COMPLETED' end,
+                       'ORDER-' || n,
+                       now() + ((n / 10) % 60 - 1) * interval '1 minute',
+                       now() - (20000 - n) * interval '5 minutes',
+                       now() - (20000 - n) * interval '5 minutes'
+                from generate_series(1, 20000) n
+                join (select id, row_number() over (order by id) as rn from users) u on u.rn = (n - 1) / 10 + 1
+                """);
+        jdbc.update("""
+                insert into refunds (refund_id, payment_id, amount, currency, refund_status, created_at)
+                select 'REF-' || p.id, p.id, 1, 'USD', 'COMPLETED', p.created_at from payments p where p.id % 7 = 0
+                """);
+        jdbc.update("""
+                insert into user_management_audit (user_id, admin_id, action, details, "timestamp")
+                select u.id, 1, case when n % 2 = 0 then 'CREDIT' else 'DEBIT' end, 'seed', now()
+                from users u cross join generate_series(1, 5) n
+                """);
+        jdbc.update("""
+                insert into idempotency_keys (key_hash, request_hash, status_code, content_type, body, created_at, expires_at)
+                select md5(n::text), md5(n::text), 201, 'application/json', '\\x7b7d', now(), now() + (n - 5000) * interval '1 minute'
+                from generate_series(1, 20000) n
+                """);
+        jdbc.execute("analyze");
+    }
+
+    private static void assertUsesIndex(String sql, String... indexes) {
+        String plan = String.join("\n", fresh.queryForList("explain " + sql, String.class));
+        assertThat(plan).as("plan of: %s", sql.strip())
+                .doesNotContain("Seq Scan")
+                .containsAnyOf(indexes);
+    }
+}
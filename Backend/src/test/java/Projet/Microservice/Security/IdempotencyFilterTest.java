@@ -0,0 +1,114 @@
+package Projet.Microservice.Security;
+
+import Projet.Microservice.Security.IdempotencyStore.StoredResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdempotencyFilterTest {
+
+    private static final String BODY = "{\"bookingId\":\"BK-1\"}";
+
+    private final IdempotencyStore store = mock(IdempotencyStore.class);
+    private final IdempotencyFilter filter = new IdempotencyFilter(store, Duration.ofSeconds(2),
+            Duration.ofMillis(10), new SimpleMeterRegistry());
+
+    @Test
+    void bufferedBodyCanBeReadThroughAReadListener() throws Exception {
+        when(store.claim(anyString(), anyString())).thenReturn(true);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        FilterChain chain = (request, response) -> {
+            ServletInputStream input = request.getInputStream();
+            input.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    received.write(input.readAllBytes());
+                }
+
+                @Override
+                public void onAllDataRead() throws IOException {
+                    response.getWriter().write("done");
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    throw new AssertionError(t);
+                }
+            });
+        };
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(paymentRequest(), response, chain);
+
+        assertThat(received.toString(StandardCharsets.UTF_8)).isEqualTo(BODY);
+        assertThat(response.getContentAsString()).isEqualTo("done");
+        verify(store).complete(anyString(), any(StoredResponse.class));
+    }
+
+    @Test
+    void keyRunningOnAnotherInstanceIsWaitedForAndReplayed() throws Exception {
+        StoredResponse saved = new StoredResponse(sha256Of(BODY), 201, "application/json",
+                "{\"paymentId\":\"PAY-1\"}".getBytes(StandardCharsets.UTF_8));
+        when(store.claim(anyString(), anyString())).thenReturn(false);
+        when(store.find(anyString())).thenReturn(null, null, saved);
+        FilterChain chain = (request, response) -> {
+            throw new AssertionError("request must not run twice");
+        };
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(paymentRequest(), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(201);
+        assertThat(response.getHeader(IdempotencyFilter.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(response.getContentAsString()).isEqualTo("{\"paymentId\":\"PAY-1\"}");
+        verify(store).release(anyString(), isNull());
+        verify(store, never()).complete(anyString(), any());
+    }
+
+    @Test
+    void keyHeldElsewhereForTooLongIsAConflict() throws Exception {
+        when(store.claim(anyString(), anyString())).thenReturn(false);
+        IdempotencyFilter impatient = new IdempotencyFilter(store, Duration.ofMillis(50),
+                Duration.ofMillis(10), new SimpleMeterRegistry());
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        impatient.doFilter(paymentRequest(), response, (request, res) -> {
+            throw new AssertionError("request must not run");
+        });
+
+        assertThat(response.getStatus()).isEqualTo(409);
+    }
+
+    private static MockHttpServletRequest paymentRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/payments");
+        request.setServletPath("/api/payments");
+        request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "key-1");
+        request.setContentType("application/json");
+        request.setContent(BODY.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private static String sha256Of(String value) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+}
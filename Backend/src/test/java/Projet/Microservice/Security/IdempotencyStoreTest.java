@@ -0,0 +1,94 @@
+package Projet.Microservice.Security;
+
+import Projet.Microservice.PostgresTestSupport;
+import Projet.Microservice.Repositories.IdempotencyRecordRepository;
+import Projet.Microservice.Security.IdempotencyStore.StoredResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two stores on the same table, standing in for two instances of the service.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdempotencyStoreTest extends PostgresTestSupport {
+
+    @Autowired
+    private IdempotencyRecordRepository repository;
+
+    private IdempotencyStore first;
+    private IdempotencyStore second;
+    private String keyHash;
+
+    @BeforeEach
+    void setUp() {
+        first = newStore(Duration.ofMinutes(2));
+        second = newStore(Duration.ofMinutes(2));
+        keyHash = UUID.randomUUID().toString();
+    }
+
+    @Test
+    void keyClaimedOnOneInstanceIsNotRunOnAnother() {
+        assertThat(first.begin(keyHash)).isNull();
+        assertThat(first.claim(keyHash, "request")).isTrue();
+
+        assertThat(second.begin(keyHash)).isNull();
+        assertThat(second.claim(keyHash, "request")).isFalse();
+        second.release(keyHash, null);
+        assertThat(second.find(keyHash)).isNull();
+
+        first.complete(keyHash, response("request"));
+
+        StoredResponse saved = second.find(keyHash);
+        assertThat(saved).isNotNull();
+        assertThat(saved.status()).isEqualTo(201);
+        assertThat(new String(saved.body(), StandardCharsets.UTF_8)).isEqualTo("{\"paymentId\":\"PAY-1\"}");
+        assertThat(second.claim(keyHash, "request")).isFalse();
+    }
+
+    @Test
+    void failedExecutionReleasesTheClaim() {
+        first.begin(keyHash);
+        assertThat(first.claim(keyHash, "request")).isTrue();
+
+        first.complete(keyHash, null);
+
+        assertThat(second.find(keyHash)).isNull();
+        assertThat(second.claim(keyHash, "request")).isTrue();
+    }
+
+    @Test
+    void claimOfAVanishedOwnerIsTakenOverAfterItsLease() {
+        IdempotencyStore crashed = newStore(Duration.ZERO);
+        crashed.begin(keyHash);
+        assertThat(crashed.claim(keyHash, "request")).isTrue();
+
+        assertThat(second.claim(keyHash, "request")).isTrue();
+        second.complete(keyHash, response("request"));
+
+        assertThat(first.find(keyHash)).isNotNull();
+    }
+
+    private IdempotencyStore newStore(Duration inFlightLease) {
+        return new IdempotencyStore(repository, Duration.ofHours(24), inFlightLease, 100, 1000,
+                new SimpleMeterRegistry());
+    }
+
+    private static StoredResponse response(String requestHash) {
+        return new StoredResponse(requestHash, 201, "application/json",
+                "{\"paymentId\":\"PAY-1\"}".getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,158 @@
+package Projet.Microservice.Security;
+
+import Projet.Microservice.Configurations.System.ResilienceConfig;
+import Projet.Microservice.Security.RealtimeTokenValidationFilter.IntrospectionFallback;
+import Projet.Microservice.Security.TokenIntrospectionCache.Introspection;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RealtimeTokenValidationFilterTest {
+
+    private static final String TOKEN = "header.payload.signature";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RestTemplate restTemplate = mock(RestTemplate.class);
+    private final JwtDecoder jwtDecoder = mock(JwtDecoder.class);
+    private TokenIntrospectionCache cache;
+    private SessionRevocationRegistry registry;
+    private RealtimeTokenValidationFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        cache = new TokenIntrospectionCache(Duration.ofMinutes(1), 100, meterRegistry);
+        registry = new SessionRevocationRegistry(Duration.ofHours(1), meterRegistry);
+        filter = newFilter(CircuitBreaker.ofDefaults("test"));
+        when(jwtDecoder.decode(TOKEN)).thenReturn(Jwt.withTokenValue(TOKEN)
+                .header("alg", "RS256")
+                .subject("user-1")
+                .claim("sid", "session-1")
+                .issuedAt(Instant.now())
+                .expiresAt(Instant.now().plusSeconds(300))
+                .build());
+    }
+
+    @Test
+    void cachedActiveTokenIsAccepted() throws Exception {
+        cache.put(TokenIntrospectionCache.keyFor(TOKEN),
+                new Introspection(true, "session-1", "user-1", Instant.now()), null);
+
+        MockHttpServletResponse response = filter(TOKEN);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        verify(restTemplate, never()).postForEntity(anyString(), any(), any());
+    }
+
+    @Test
+    void cachedTokenOfRevokedSessionIsRejected() throws Exception {
+        cache.put(TokenIntrospectionCache.keyFor(TOKEN),
+                new Introspection(true, "session-1", "user-1", Instant.now()), null);
+        registry.revoke("user-1", List.of("session-1"), Instant.now());
+
+        MockHttpServletResponse response = filter(TOKEN);
+
+        assertThat(response.getStatus()).isEqualTo(401);
+        verify(restTemplate, never()).postForEntity(anyString(), any(), any());
+    }
+
+    @Test
+    void cachedTokenWithoutSessionIssuedBeforeUserRevocationIsRejected() throws Exception {
+        Instant issuedAt = Instant.now().minusSeconds(60);
+        cache.put(TokenIntrospectionCache.keyFor(TOKEN), new Introspection(true, null, "user-1", issuedAt), null);
+        registry.revoke("user-1", List.of(), Instant.now());
+
+        assertThat(filter(TOKEN).getStatus()).isEqualTo(401);
+    }
+
+    @Test
+    void keycloakClientErrorRejectsTokenWithoutFallback() throws Exception {
+        keycloakFails(HttpClientErrorException.create(HttpStatus.UNAUTHORIZED, "Unauthorized", null, null, null));
+
+        assertThat(filter(TOKEN).getStatus()).isEqualTo(401);
+        verify(jwtDecoder, never()).decode(anyString());
+        assertThat(meterRegistry.counter("token.introspection.errors").count()).isEqualTo(1);
+    }
+
+    @Test
+    void keycloakServerErrorFallsBackToLocalVerification() throws Exception {
+        keycloakFails(HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE, "Unavailable", null, null, null));
+
+        assertThat(filter(TOKEN).getStatus()).isEqualTo(200);
+        verify(jwtDecoder).decode(TOKEN);
+        assertThat(meterRegistry.counter("token.introspection.errors").count()).isZero();
+    }
+
+    @Test
+    void keycloakTimeoutFallsBackToLocalVerification() throws Exception {
+        keycloakFails(new ResourceAccessException("Read timed out"));
+
+        assertThat(filter(TOKEN).getStatus()).isEqualTo(200);
+        verify(jwtDecoder).decode(TOKEN);
+    }
+
+    // An open circuit would send every later request to the fallback and accept tokens Keycloak refused
+    @Test
+    void clientErrorsDoNotOpenTheCircuit() throws Exception {
+        CircuitBreaker breaker = new ResilienceConfig().keycloakIntrospectionCircuitBreaker(
+                CircuitBreakerRegistry.ofDefaults(), meterRegistry, 50, 50, Duration.ofSeconds(1), 4, 2,
+                Duration.ofSeconds(30));
+        filter = newFilter(breaker);
+        keycloakFails(HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", null, null, null));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(filter(TOKEN).getStatus()).isEqualTo(401);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        verify(jwtDecoder, never()).decode(anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RealtimeTokenValidationFilter newFilter(CircuitBreaker breaker) {
+        ObjectProvider<JwtDecoder> decoderProvider = mock(ObjectProvider.class);
+        when(decoderProvider.getObject()).thenReturn(jwtDecoder);
+        RealtimeTokenValidationFilter validationFilter = new RealtimeTokenValidationFilter(restTemplate, cache, registry,
+                decoderProvider, breaker, meterRegistry);
+        ReflectionTestUtils.setField(validationFilter, "introspectionFallback", IntrospectionFallback.LOCAL_JWT);
+        return validationFilter;
+    }
+
+    private void keycloakFails(RuntimeException failure) {
+        when(restTemplate.postForEntity(anyString(), any(), eq(String.class))).thenThrow(failure);
+    }
+
+    private MockHttpServletResponse filter(String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/voyage/api/payments/user");
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,71 @@
+package Projet.Microservice.Services.CurrencyRates;
+
+import Projet.Microservice.Entities.Currency;
+import Projet.Microservice.Exceptions.ExchangeRateUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExchangeRateCacheTest {
+
+    private final ExchangeRateClient client = mock(ExchangeRateClient.class);
+    private final ExchangeRateCache cache = new ExchangeRateCache(client, mock(ExchangeRateHistoryService.class),
+            Currency.USD, Duration.ofHours(6), new SimpleMeterRegistry());
+
+    @Test
+    void failedWarmUpIsRetriedBeforeTheNextRegularRefresh() {
+        when(client.fetchLatestRates(Currency.USD))
+                .thenThrow(new RuntimeException("upstream down"))
+                .thenReturn(Map.of(Currency.EUR, new BigDecimal("0.9")));
+
+        cache.warmUp();
+        assertThatThrownBy(cache::snapshot).isInstanceOf(ExchangeRateUnavailableException.class);
+
+        cache.retryFailedRefresh();
+        assertThat(cache.snapshot().rate(Currency.USD, Currency.EUR)).isEqualByComparingTo("0.9");
+    }
+
+    @Test
+    void retryDoesNothingAfterSuccessfulRefresh() {
+        when(client.fetchLatestRates(Currency.USD)).thenReturn(Map.of(Currency.EUR, new BigDecimal("0.9")));
+
+        cache.warmUp();
+        cache.retryFailedRefresh();
+
+        verify(client, times(1)).fetchLatestRates(Currency.USD);
+    }
+
+    // Two instances, each with its own refresh history, must agree on what a version means
+    @Test
+    void versionIdentifiesTheRatesOnEveryInstance() {
+        ExchangeRateClient otherClient = mock(ExchangeRateClient.class);
+        ExchangeRateCache otherInstance = new ExchangeRateCache(otherClient, mock(ExchangeRateHistoryService.class),
+                Currency.USD, Duration.ofHours(6), new SimpleMeterRegistry());
+        when(client.fetchLatestRates(Currency.USD)).thenReturn(
+                Map.of(Currency.EUR, new BigDecimal("0.9")),
+                Map.of(Currency.EUR, new BigDecimal("0.91")),
+                Map.of(Currency.EUR, new BigDecimal("0.9")));
+        when(otherClient.fetchLatestRates(Currency.USD)).thenReturn(Map.of(Currency.EUR, new BigDecimal("0.9")));
+
+        cache.warmUp();
+        long first = cache.snapshot().getVersion();
+        cache.refresh();
+        long changed = cache.snapshot().getVersion();
+        cache.refresh();
+        otherInstance.warmUp();
+
+        assertThat(changed).isNotEqualTo(first);
+        assertThat(cache.snapshot().getVersion()).isEqualTo(first);
+        assertThat(otherInstance.snapshot().getVersion()).isEqualTo(first);
+    }
+}
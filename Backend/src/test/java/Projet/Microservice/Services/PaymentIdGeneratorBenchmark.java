@@ -0,0 +1,50 @@
+package Projet.Microservice.Services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of payment ID generation, alone and with every core generating at once.
+ * Not part of the test run; start it with main() from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentIdGeneratorBenchmark {
+
+    private final PaymentIdGenerator generator = new PaymentIdGenerator();
+
+    @Benchmark
+    @Threads(1)
+    public String singleThread() {
+        return generator.nextPaymentId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String allThreads() {
+        return generator.nextPaymentId();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PaymentIdGeneratorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,96 @@
+package Projet.Microservice.Services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PaymentIdGeneratorTest {
+
+    private static final int THREADS = 16;
+    private static final int IDS_PER_THREAD = 50_000;
+
+    private final PaymentIdGenerator generator = new PaymentIdGenerator();
+
+    @Test
+    void concurrentIdsAreUniqueAndIncreasingPerThread() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    List<String> ids = new ArrayList<>(IDS_PER_THREAD);
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        ids.add(generator.nextPaymentId());
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            Set<String> all = new HashSet<>();
+            for (Future<List<String>> result : results) {
+                List<String> ids = result.get();
+                assertThat(ids).isSortedAccordingTo(String::compareTo);
+                all.addAll(ids);
+            }
+            assertThat(all).hasSize(THREADS * IDS_PER_THREAD);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void separateGeneratorsInTheSameMillisecondDoNotCollide() {
+        // Two instances started together: same clock, same sequence, only the random bits differ
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(new PaymentIdGenerator().nextPaymentId());
+        }
+        assertThat(ids).hasSize(10_000);
+    }
+
+    @Test
+    void consecutiveIdsDoNotRevealTheNextOne() {
+        UUID first = generator.nextId();
+        UUID second = generator.nextId();
+
+        long randomBitsFirst = first.getLeastSignificantBits();
+        long randomBitsSecond = second.getLeastSignificantBits();
+        assertThat(randomBitsSecond).isNotEqualTo(randomBitsFirst).isNotEqualTo(randomBitsFirst + 1);
+    }
+
+    @Test
+    void textFormIsFixedWidthCrockfordBase32() {
+        assertThat(generator.nextPaymentId()).matches("PAY-[0-7][0-9A-HJKMNP-TV-Z]{25}");
+    }
+
+    // What makes ORDER BY payment_id a time ordering
+    @Test
+    void textOrderMatchesNumericOrder() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long highA = random.nextLong();
+            long highB = random.nextInt(4) == 0 ? highA : random.nextLong();
+            long lowA = random.nextLong();
+            long lowB = random.nextLong();
+            int numeric = highA != highB ? Long.compareUnsigned(highA, highB) : Long.compareUnsigned(lowA, lowB);
+
+            int text = PaymentIdGenerator.encode(highA, lowA).compareTo(PaymentIdGenerator.encode(highB, lowB));
+
+            assertThat(Integer.signum(text)).isEqualTo(Integer.signum(numeric));
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package Projet.Microservice.Services;
+
+import Projet.Microservice.Configurations.KafkaConfig;
+import Projet.Microservice.Entities.Currency;
+import Projet.Microservice.Entities.Payment;
+import Projet.Microservice.Entities.PaymentMethod;
+import Projet.Microservice.Entities.PaymentOutboxEvent;
+import Projet.Microservice.Entities.PaymentStatus;
+import Projet.Microservice.Entities.UserEntities.UserEntity;
+import Projet.Microservice.PostgresTestSupport;
+import Projet.Microservice.Repositories.PaymentOutboxRepository;
+import Projet.Microservice.Repositories.PaymentRepository;
+import Projet.Microservice.Repositories.UserRepositories.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Outbox rows through PaymentOutboxRelay to an embedded Kafka broker, including the status
+ * changes made by PaymentRecoveryService. The relay's own schedule is pushed out of the way
+ * (poll-interval) and runs are triggered by the tests.
+ */
+@DataJpaTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "payments.outbox.poll-interval=3600000",
+        "payments.outbox.topic-partitions=1"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EmbeddedKafka(partitions = 1, topics = PaymentOutboxRelayTest.TOPIC)
+@Import({PaymentOutboxRelay.class, PaymentOutbox.class, PaymentRecoveryService.class, KafkaConfig.class,
+        SimpleMeterRegistry.class})
+@ImportAutoConfiguration({KafkaAutoConfiguration.class, JacksonAutoConfiguration.class})
+class PaymentOutboxRelayTest extends PostgresTestSupport {
+
+    static final String TOPIC = "payment-status-events";
+
+    @Autowired
+    private PaymentOutboxRelay relay;
+
+    @Autowired
+    private PaymentRecoveryService recoveryService;
+
+    @Autowired
+    private PaymentOutboxRepository outboxRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private EntityManagerFactoryBuilder entityManagerFactoryBuilder;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @MockitoBean
+    private PaymentService paymentService;
+
+    private Consumer<String, String> consumer;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("delete from payment_outbox");
+        Map<String, Object> props = KafkaTestUtils.consumerProps("relay-test-" + UUID.randomUUID(), "false", broker);
+        consumer = new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new StringDeserializer())
+                .createConsumer();
+        // Only what this test publishes: skip records left by the previous ones
+        broker.consumeFromEmbeddedTopics(consumer, true, TOPIC);
+    }
+
+    @AfterEach
+    void tearDown() {
+        consumer.close();
+    }
+
+    @Test
+    void outboxRowsArePublishedInOrderAndDeleted() {
+        List<PaymentOutboxEvent> events = List.of(
+                outboxRow("PAY-A", "BK-1", PaymentStatus.INITIATING),
+                outboxRow("PAY-A", "BK-1", PaymentStatus.PENDING),
+                outboxRow("PAY-B", "BK-2", PaymentStatus.EXPIRED));
+        outboxRepository.saveAll(events);
+
+        relay.relay();
+
+        List<ConsumerRecord<String, String>> records = poll(3);
+        assertThat(records).extracting(ConsumerRecord::key).containsExactly("BK-1", "BK-1", "BK-2");
+        assertThat(records).extracting(ConsumerRecord::value)
+                .containsExactlyElementsOf(events.stream().map(PaymentOutboxEvent::getPayload).toList());
+        assertThat(outboxRepository.count()).isZero();
+        assertThat(meterRegistry.get("payments.outbox.pending").gauge().value()).isZero();
+    }
+
+    // Each EntityManagerFactory has its own id generator, like a separate instance of the service
+    @Test
+    void statusChangesFromTwoInstancesArePublishedInCommitOrder() {
+        LocalContainerEntityManagerFactoryBean factoryBean = entityManagerFactoryBuilder.dataSource(dataSource)
+                .packages(PaymentOutboxEvent.class)
+                .persistenceUnit("other-instance")
+                .build();
+        factoryBean.afterPropertiesSet();
+        EntityManagerFactory otherInstance = factoryBean.getObject();
+        try {
+            // Both instances have issued ids before (with pooled ids, each would now hold a block)
+            outboxRepository.save(outboxRow("PAY-W1", "BK-W1", PaymentStatus.PENDING));
+            saveOn(otherInstance, outboxRow("PAY-W2", "BK-W2", PaymentStatus.PENDING));
+
+            outboxRepository.save(outboxRow("PAY-E", "BK-E", PaymentStatus.INITIATING));
+            saveOn(otherInstance, outboxRow("PAY-E", "BK-E", PaymentStatus.PENDING));
+            outboxRepository.save(outboxRow("PAY-E", "BK-E", PaymentStatus.CAPTURING));
+        } finally {
+            factoryBean.destroy();
+        }
+
+        relay.relay();
+
+        assertThat(poll(5)).filteredOn(record -> record.key().equals("BK-E"))
+                .extracting(ConsumerRecord::value)
+                .containsExactly(
+                        "{\"paymentId\":\"PAY-E\",\"status\":\"INITIATING\"}",
+                        "{\"paymentId\":\"PAY-E\",\"status\":\"PENDING\"}",
+                        "{\"paymentId\":\"PAY-E\",\"status\":\"CAPTURING\"}");
+    }
+
+    @Test
+    void rowsStayWhenKafkaDoesNotAcknowledge() {
+        outboxRepository.save(outboxRow("PAY-C", "BK-3", PaymentStatus.PENDING));
+        @SuppressWarnings("unchecked")
+        KafkaTemplate<String, String> unavailable = mock(KafkaTemplate.class);
+        when(unavailable.send(anyString(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PaymentOutboxRelay failingRelay = new PaymentOutboxRelay(outboxRepository, unavailable, transactionTemplate,
+                registry, TOPIC, 500, Duration.ofSeconds(1), 3_600_000);
+        // Not started by a context, so it has no polling thread to shut down
+        assertThat(failingRelay.isRunning()).isFalse();
+
+        failingRelay.relay();
+
+        assertThat(outboxRepository.count()).isEqualTo(1);
+        assertThat(registry.get("payments.outbox.publish.failures").counter().count()).isEqualTo(1);
+        assertThat(registry.get("payments.outbox.pending").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void relayPollsOnlyOnceStarted() throws Exception {
+        outboxRepository.save(outboxRow("PAY-D", "BK-4", PaymentStatus.PENDING));
+        @SuppressWarnings("unchecked")
+        KafkaTemplate<String, String> kafka = mock(KafkaTemplate.class);
+        when(kafka.send(anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        PaymentOutboxRelay pollingRelay = new PaymentOutboxRelay(outboxRepository, kafka, transactionTemplate,
+                new SimpleMeterRegistry(), TOPIC, 500, Duration.ofSeconds(1), 50);
+
+        Thread.sleep(300);
+        verify(kafka, never()).send(anyString(), any(), any());
+
+        pollingRelay.start();
+        try {
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (outboxRepository.count() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+        } finally {
+            pollingRelay.stop();
+        }
+        assertThat(outboxRepository.count()).isZero();
+        assertThat(pollingRelay.isRunning()).isFalse();
+    }
+
+    @Test
+    void releasedStuckPaymentIsPublished() {
+        Payment stuck = savePayment(PaymentStatus.INITIATING, Instant.now().minus(Duration.ofMinutes(10)));
+        Payment recent = savePayment(PaymentStatus.INITIATING, Instant.now());
+
+        recoveryService.recoverStuckPayments();
+        relay.relay();
+
+        assertThat(paymentRepository.findByPaymentId(stuck.getPaymentId()).orElseThrow().getPaymentStatus())
+                .isEqualTo(PaymentStatus.CREATED);
+        assertThat(paymentRepository.findByPaymentId(recent.getPaymentId()).orElseThrow().getPaymentStatus())
+                .isEqualTo(PaymentStatus.INITIATING);
+        ConsumerRecord<String, String> record = poll(1).get(0);
+        assertThat(record.key()).isEqualTo(stuck.getBookingId());
+        assertThat(record.value()).contains("\"paymentId\":\"" + stuck.getPaymentId() + "\"", "\"status\":\"CREATED\"");
+    }
+
+    private List<ConsumerRecord<String, String>> poll(int expected) {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (records.size() < expected && System.nanoTime() < deadline) {
+            KafkaTestUtils.getRecords(consumer, Duration.ofMillis(500)).forEach(records::add);
+        }
+        return records;
+    }
+
+    private static void saveOn(EntityManagerFactory instance, PaymentOutboxEvent event) {
+        EntityManager entityManager = instance.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            entityManager.persist(event);
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static PaymentOutboxEvent outboxRow(String paymentId, String bookingId, PaymentStatus status) {
+        return PaymentOutboxEvent.builder()
+                .paymentId(paymentId)
+                .bookingId(bookingId)
+                .status(status)
+                .payload("{\"paymentId\":\"" + paymentId + "\",\"status\":\"" + status + "\"}")
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    private Payment savePayment(PaymentStatus status, Instant updatedAt) {
+        UserEntity user = new UserEntity();
+        user.setKeycloakId(UUID.randomUUID().toString());
+        user.setUsername("payer-" + user.getKeycloakId());
+        user = userRepository.save(user);
+        Payment payment = Payment.builder()
+                .paymentId("PAY-" + UUID.randomUUID())
+                .bookingId("BK-" + UUID.randomUUID())
+                .amount(new BigDecimal("120.00"))
+                .currency(Currency.EUR)
+                .paymentMethod(PaymentMethod.PAYPAL)
+                .paymentStatus(status)
+                .expiresAt(Instant.now().plusSeconds(1800))
+                .amountInUSD(new BigDecimal("130.00"))
+                .user(user)
+                .build();
+        payment = paymentRepository.save(payment);
+        // Auditing sets updated_at on save; backdate it the way a stalled instance would leave it
+        jdbcTemplate.update("update payments set updated_at = ? where id = ?",
+                Timestamp.from(updatedAt), payment.getId());
+        return payment;
+    }
+}
@@ -0,0 +1,330 @@
+package Projet.Microservice.Services;
+
+import Projet.Microservice.DTO.CreatePaymentRequestDTO;
+import Projet.Microservice.DTO.PaymentRedirectDTO;
+import Projet.Microservice.DTO.PaymentResponseDTO;
+import Projet.Microservice.Entities.Currency;
+import Projet.Microservice.Entities.Payment;
+import Projet.Microservice.Entities.PaymentMethod;
+import Projet.Microservice.Entities.PaymentStatus;
+import Projet.Microservice.Entities.UserEntities.UserEntity;
+import Projet.Microservice.Exceptions.BookingAlreadyPaidException;
+import Projet.Microservice.Exceptions.PaymentStatusException;
+import Projet.Microservice.PostgresTestSupport;
+import Projet.Microservice.Repositories.PaymentRepository;
+import Projet.Microservice.Repositories.UserRepositories.UserRepository;
+import Projet.Microservice.Services.PaymentProviders.PayPalPaymentService;
+import Projet.Microservice.Services.PaymentProviders.PaymentProviderFactory;
+import Projet.Microservice.Services.PaymentProviders.PaymentProviderService;
+import Projet.Microservice.Services.UserService.UserService;
+import com.paypal.orders.Order;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * PaymentService against a real database, with the persistence context kept open across the
+ * service's transactions the way spring.jpa.open-in-view does for a web request.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({PaymentService.class, PaymentOutbox.class, PaymentIdGenerator.class, SimpleMeterRegistry.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+class PaymentServiceTest extends PostgresTestSupport {
+
+    private static final Instant RATES_FETCHED_AT = Instant.parse("2026-10-18T08:00:00Z");
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockitoSpyBean
+    private PaymentIdGenerator paymentIdGenerator;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockitoBean
+    private CurrencyConversionService conversionService;
+
+    @MockitoBean
+    private PaymentProviderFactory providerFactory;
+
+    @MockitoBean
+    private PayPalPaymentService payPalPaymentService;
+
+    @MockitoBean
+    private UserService userService;
+
+    @MockitoBean
+    private PaymentCaptureExecutor captureExecutor;
+
+    @MockitoBean
+    private PaymentStatusStreams statusStreams;
+
+    @MockitoBean
+    private AuditorAware<String> auditorAware;
+
+    private final PaymentProviderService provider = mock(PaymentProviderService.class);
+    private UserEntity user;
+
+    @BeforeEach
+    void setUp() {
+        user = new UserEntity();
+        user.setKeycloakId(UUID.randomUUID().toString());
+        user.setUsername("payer-" + user.getKeycloakId());
+        user = userRepository.save(user);
+        when(providerFactory.getProvider(PaymentMethod.PAYPAL)).thenReturn(provider);
+    }
+
+    @Test
+    void failedProviderCallLeavesPaymentCreated() {
+        Payment payment = savePayment(PaymentStatus.CREATED);
+        when(provider.processPayment(any())).thenAnswer(invocation -> {
+            Payment passed = invocation.getArgument(0);
+            passed.setPaymentStatus(PaymentStatus.FAILED);
+            passed.setFailureReason("Declined by provider");
+            throw new IllegalStateException("PayPal unavailable");
+        });
+
+        assertThatThrownBy(() -> inOpenSession(() -> paymentService.initiatePayment(payment.getPaymentId())))
+                .hasMessage("PayPal unavailable");
+
+        Payment stored = paymentRepository.findByPaymentId(payment.getPaymentId()).orElseThrow();
+        assertThat(stored.getPaymentStatus()).isEqualTo(PaymentStatus.CREATED);
+        assertThat(stored.getFailureReason()).isNull();
+        assertThat(outboxStatuses(payment)).containsExactly("INITIATING", "CREATED");
+    }
+
+    @Test
+    void providerChangesAreNotWrittenBackOnSuccess() {
+        Payment payment = savePayment(PaymentStatus.CREATED);
+        when(provider.processPayment(any())).thenAnswer(invocation -> {
+            Payment passed = invocation.getArgument(0);
+            passed.setProviderTransactionId("ORDER-1");
+            passed.setPaymentStatus(PaymentStatus.PENDING);
+            passed.setDescription("changed by provider");
+            return PaymentRedirectDTO.builder().paymentId(passed.getPaymentId()).build();
+        });
+
+        inOpenSession(() -> paymentService.initiatePayment(payment.getPaymentId()));
+
+        Payment stored = paymentRepository.findByPaymentId(payment.getPaymentId()).orElseThrow();
+        assertThat(stored.getPaymentStatus()).isEqualTo(PaymentStatus.PENDING);
+        assertThat(stored.getProviderTransactionId()).isEqualTo("ORDER-1");
+        assertThat(stored.getDescription()).isEqualTo("Booking payment");
+        assertThat(outboxStatuses(payment)).containsExactly("INITIATING", "PENDING");
+    }
+
+    @Test
+    void cancelMovesPendingPaymentToCancelled() {
+        Payment payment = savePayment(PaymentStatus.PENDING);
+
+        PaymentResponseDTO response = inOpenSession(() -> paymentService.handlePayPalCancel(payment.getPaymentId()));
+
+        assertThat(response.getPaymentStatus()).isEqualTo(PaymentStatus.CANCELLED);
+        assertThat(paymentRepository.findByPaymentId(payment.getPaymentId()).orElseThrow().getPaymentStatus())
+                .isEqualTo(PaymentStatus.CANCELLED);
+        assertThat(outboxStatuses(payment)).containsExactly("CANCELLED");
+    }
+
+    @Test
+    void cancelLeavesCapturedPaymentAlone() {
+        Payment payment = savePayment(PaymentStatus.COMPLETED);
+
+        PaymentResponseDTO response = inOpenSession(() -> paymentService.handlePayPalCancel(payment.getPaymentId()));
+
+        assertThat(response.getPaymentStatus()).isEqualTo(PaymentStatus.COMPLETED);
+        Payment stored = paymentRepository.findByPaymentId(payment.getPaymentId()).orElseThrow();
+        assertThat(stored.getPaymentStatus()).isEqualTo(PaymentStatus.COMPLETED);
+        assertThat(stored.getFailureReason()).isNull();
+        assertThat(outboxStatuses(payment)).isEmpty();
+    }
+
+    @Test
+    void captureOutcomeThatCannotBeRecordedIsCounted() throws Exception {
+        Payment payment = savePayment(PaymentStatus.PENDING);
+        List<Runnable> captures = new ArrayList<>();
+        when(captureExecutor.submit(any(), any())).thenAnswer(invocation -> captures.add(invocation.getArgument(1)));
+        when(payPalPaymentService.capturePayment(any())).thenReturn(new Order().status("COMPLETED"));
+
+        inOpenSession(() -> paymentService.handlePayPalSuccess(payment.getPaymentId(), "TOKEN", "PAYER"));
+        // Something else moved the payment on while the capture was queued
+        jdbcTemplate.update("update payments set payment_status = 'CANCELLED' where payment_id = ?", payment.getPaymentId());
+        captures.forEach(Runnable::run);
+
+        assertThat(paymentRepository.findByPaymentId(payment.getPaymentId()).orElseThrow().getPaymentStatus())
+                .isEqualTo(PaymentStatus.CANCELLED);
+        assertThat(meterRegistry.counter("payments.capture.unrecorded", "outcome", "COMPLETED").count()).isEqualTo(1);
+        assertThat(outboxStatuses(payment)).containsExactly("CAPTURING");
+    }
+
+    @Test
+    void repeatedSuccessCallbackReportsTheCurrentStatus() {
+        Payment payment = savePayment(PaymentStatus.PENDING);
+
+        inOpenSession(() -> paymentService.handlePayPalSuccess(payment.getPaymentId(), "TOKEN", "PAYER"));
+        PaymentResponseDTO repeated = inOpenSession(
+                () -> paymentService.handlePayPalSuccess(payment.getPaymentId(), "TOKEN", "PAYER"));
+
+        assertThat(repeated.getPaymentStatus()).isEqualTo(PaymentStatus.CAPTURING);
+        verify(captureExecutor, times(1)).submit(any(), any());
+        assertThat(outboxStatuses(payment)).containsExactly("CAPTURING");
+    }
+
+    @Test
+    void successCallbackForFinishedPaymentIsIdempotent() {
+        Payment payment = savePayment(PaymentStatus.COMPLETED);
+
+        PaymentResponseDTO response = inOpenSession(
+                () -> paymentService.handlePayPalSuccess(payment.getPaymentId(), "TOKEN", "PAYER"));
+
+        assertThat(response.getPaymentStatus()).isEqualTo(PaymentStatus.COMPLETED);
+        verify(captureExecutor, never()).submit(any(), any());
+        assertThat(outboxStatuses(payment)).isEmpty();
+    }
+
+    @Test
+    void successCallbackForPaymentNeverSentToPayPalFails() {
+        Payment payment = savePayment(PaymentStatus.CREATED);
+
+        assertThatThrownBy(() -> inOpenSession(
+                () -> paymentService.handlePayPalSuccess(payment.getPaymentId(), "TOKEN", "PAYER")))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void createRetriesWhenGeneratedPaymentIdIsTaken() {
+        Payment existing = savePayment(PaymentStatus.COMPLETED);
+        String freshId = paymentIdGenerator.nextPaymentId();
+        doReturn(existing.getPaymentId(), freshId).when(paymentIdGenerator).nextPaymentId();
+
+        PaymentResponseDTO response = paymentService.createPayment(createRequest("BK-" + UUID.randomUUID()));
+
+        assertThat(response.getPaymentId()).isEqualTo(freshId);
+        assertThat(paymentRepository.findByPaymentId(freshId)).isPresent();
+    }
+
+    @Test
+    void createStoresTheRateUsedForAmountInUsd() {
+        PaymentResponseDTO response = paymentService.createPayment(createRequest("BK-" + UUID.randomUUID()));
+
+        Payment stored = paymentRepository.findByPaymentId(response.getPaymentId()).orElseThrow();
+        assertThat(stored.getAmountInUSD()).isEqualByComparingTo("130.00");
+        assertThat(stored.getUsdRate()).isEqualByComparingTo("1.0833333333");
+        assertThat(stored.getUsdRateFetchedAt()).isEqualTo(RATES_FETCHED_AT);
+    }
+
+    @Test
+    void createRejectsBookingThatAlreadyHasAPayment() {
+        Payment existing = savePayment(PaymentStatus.COMPLETED);
+
+        assertThatThrownBy(() -> paymentService.createPayment(createRequest(existing.getBookingId())))
+                .isInstanceOf(BookingAlreadyPaidException.class);
+    }
+
+    @Test
+    void createRejectsSecondOpenPayment() {
+        savePayment(PaymentStatus.PENDING);
+
+        assertThatThrownBy(() -> paymentService.createPayment(createRequest("BK-" + UUID.randomUUID())))
+                .isInstanceOf(PaymentStatusException.class);
+    }
+
+    private CreatePaymentRequestDTO createRequest(String bookingId) {
+        when(userService.getCurrentUser()).thenReturn(user);
+        when(providerFactory.getAvailableMethods("EUR")).thenReturn(List.of(PaymentMethod.PAYPAL));
+        when(conversionService.convertWithRate(any(), any(), any())).thenReturn(new CurrencyConversionService.Conversion(
+                new BigDecimal("130.00"), new BigDecimal("1.0833333333"), RATES_FETCHED_AT));
+        when(auditorAware.getCurrentAuditor()).thenReturn(Optional.of("payer"));
+        return CreatePaymentRequestDTO.builder()
+                .bookingId(bookingId)
+                .amount(new BigDecimal("120.00"))
+                .currency(Currency.EUR)
+                .paymentMethod(PaymentMethod.PAYPAL)
+                .build();
+    }
+
+    private Payment savePayment(PaymentStatus status) {
+        Instant now = Instant.now();
+        Payment payment = Payment.builder()
+                .paymentId(paymentIdGenerator.nextPaymentId())
+                .bookingId("BK-" + UUID.randomUUID())
+                .amount(new BigDecimal("120.00"))
+                .currency(Currency.EUR)
+                .paymentMethod(PaymentMethod.PAYPAL)
+                .paymentStatus(status)
+                .description("Booking payment")
+                .expiresAt(now.plusSeconds(1800))
+                .amountInUSD(new BigDecimal("130.00"))
+                .user(user)
+                .build();
+        payment.setCreatedAt(now);
+        payment.setUpdatedAt(now);
+        return paymentRepository.save(payment);
+    }
+
+    private List<String> outboxStatuses(Payment payment) {
+        return jdbcTemplate.queryForList("select status from payment_outbox where payment_id = ? order by id",
+                String.class, payment.getPaymentId());
+    }
+
+    // Binds one EntityManager for the whole call, like OpenEntityManagerInViewInterceptor
+    private <T> T inOpenSession(Supplier<T> call) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+        try {
+            return call.get();
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            entityManager.close();
+        }
+    }
+}
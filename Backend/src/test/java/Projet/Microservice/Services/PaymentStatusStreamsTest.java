@@ -0,0 +1,71 @@
+package Projet.Microservice.Services;
+
+import Projet.Microservice.DTO.PaymentStatusEventDTO;
+import Projet.Microservice.Entities.PaymentStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PaymentStatusStreamsTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PaymentStatusStreams streams = new PaymentStatusStreams(10, 2, Duration.ofMinutes(1), 60_000, meterRegistry);
+
+    @AfterEach
+    void shutdown() {
+        streams.shutdown();
+    }
+
+    @Test
+    void subscriptionIsRegisteredBeforeTheStatusIsRead() {
+        AtomicReference<Double> openWhileReading = new AtomicReference<>();
+
+        streams.subscribe("PAY-1", () -> {
+            openWhileReading.set(openConnections());
+            return event("PAY-1", PaymentStatus.CAPTURING);
+        });
+
+        assertThat(openWhileReading.get()).isEqualTo(1.0);
+        assertThat(openConnections()).isEqualTo(1.0);
+    }
+
+    @Test
+    void failedStatusReadReleasesTheSubscription() {
+        assertThatThrownBy(() -> streams.subscribe("PAY-2", () -> {
+            throw new IllegalArgumentException("not found");
+        })).hasMessage("not found");
+
+        assertThat(openConnections()).isZero();
+    }
+
+    @Test
+    void perPaymentLimitIsEnforced() {
+        streams.subscribe("PAY-3", () -> event("PAY-3", PaymentStatus.PENDING));
+        streams.subscribe("PAY-3", () -> event("PAY-3", PaymentStatus.PENDING));
+
+        assertThatThrownBy(() -> streams.subscribe("PAY-3", () -> event("PAY-3", PaymentStatus.PENDING)))
+                .hasMessageContaining("Too many event streams");
+        assertThat(openConnections()).isEqualTo(2.0);
+    }
+
+    private double openConnections() {
+        return meterRegistry.get("payments.events.connections").gauge().value();
+    }
+
+    private static PaymentStatusEventDTO event(String paymentId, PaymentStatus status) {
+        return PaymentStatusEventDTO.builder()
+                .paymentId(paymentId)
+                .bookingId("BK-1")
+                .status(status)
+                .occurredAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,68 @@
+package Projet.Microservice.Services.UserService;
+
+import Projet.Microservice.Entities.UserEntities.UserEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserLookupCacheTest {
+
+    private final UserLookupCache cache = new UserLookupCache(100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void evictsImmediatelyOutsideTransaction() {
+        load(1L);
+        cache.evictUser(1L);
+        load(1L);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void evictsOnlyAfterCommit() {
+        load(1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.evictUser(1L);
+        load(1L);
+        assertThat(loads).hasValue(1);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        load(1L);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void keepsEntriesWhenTransactionRollsBack() {
+        cache.getUserId("kc-1", keycloakId -> 1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.evictUser(1L, "kc-1");
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertThat(cache.getUserId("kc-1", keycloakId -> 2L)).isEqualTo(1L);
+    }
+
+    private void load(Long userId) {
+        cache.getUser(userId, id -> {
+            loads.incrementAndGet();
+            return new UserEntity();
+        });
+    }
+}
@@ -7,8 +7,18 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class OneSessionAuthenticator implements Authenticator {
 
+    // Null when no revocation endpoint is configured
+    private final SessionRevocationPublisher revocationPublisher;
+
+    public OneSessionAuthenticator(SessionRevocationPublisher revocationPublisher) {
+        this.revocationPublisher = revocationPublisher;
+    }
+
     @Override
     public void authenticate(AuthenticationFlowContext context) {
         // Get the authenticated user
@@ -42,11 +52,21 @@ public class OneSessionAuthenticator implements Authenticator {
         String currentAuthSessionId = context.getAuthenticationSession().getParentSession().getId();
 
         // Find and remove all other user sessions
-        session.sessions().getUserSessionsStream(realm, user)
+        List<UserSessionModel> sessionsToRemove = session.sessions().getUserSessionsStream(realm, user)
                 .filter(userSession -> !userSession.getId().equals(currentAuthSessionId))
-                .forEach(userSession -> {
-                    session.sessions().removeUserSession(realm, userSession);
-                });
+                .collect(Collectors.toList());
+
+        for (UserSessionModel userSession : sessionsToRemove) {
+            session.sessions().removeUserSession(realm, userSession);
+        }
+
+        // Let the backend know which sessions are gone
+        if (revocationPublisher != null && !sessionsToRemove.isEmpty()) {
+            List<String> sessionIds = sessionsToRemove.stream()
+                    .map(UserSessionModel::getId)
+                    .collect(Collectors.toList());
+            revocationPublisher.publish(realm.getName(), user.getId(), sessionIds);
+        }
     }
 
     @Override
@@ -16,6 +16,8 @@ public class OneSessionAuthenticatorFactory implements AuthenticatorFactory, Con
 
     public static final String ID = "one-session-authenticator";
 
+    private SessionRevocationPublisher revocationPublisher;
+
     @Override
     public String getDisplayType() {
         return "One Session Authenticator";
@@ -62,11 +64,21 @@ public class OneSessionAuthenticatorFactory implements AuthenticatorFactory, Con
 
     @Override
     public Authenticator create(KeycloakSession session) {
-        return new OneSessionAuthenticator();
+        return new OneSessionAuthenticator(revocationPublisher);
     }
 
+    /**
+     * Configured through the SPI options, e.g.
+     * --spi-authenticator-one-session-authenticator-revocation-endpoint=http://backend:8081/voyage/api/internal/session-revocations
+     * --spi-authenticator-one-session-authenticator-revocation-secret=...
+     */
     @Override
-    public void init(Scope config) {}
+    public void init(Scope config) {
+        String endpoint = config.get("revocationEndpoint");
+        if (endpoint != null && !endpoint.isBlank()) {
+            revocationPublisher = new SessionRevocationPublisher(endpoint, config.get("revocationSecret"));
+        }
+    }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {}
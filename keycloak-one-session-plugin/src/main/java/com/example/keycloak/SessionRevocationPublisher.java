@@ -0,0 +1,105 @@
+package com.example.keycloak;
+
+import org.jboss.logging.Logger;
+import org.keycloak.util.JsonSerialization;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes the sessions removed by {@link OneSessionAuthenticator} to the backend so it can
+ * reject their tokens locally instead of introspecting every request against Keycloak.
+ *
+ * Pushes run in the background and never block the login flow. Connection errors, 429 and 5xx
+ * answers are retried with exponential backoff (1s, 2s, 4s, ...) up to MAX_ATTEMPTS; a push
+ * that still fails is logged as an error, since the backend will keep accepting the session's
+ * tokens until they expire (or, with introspection, until its cache entry does).
+ */
+public class SessionRevocationPublisher {
+
+    private static final Logger logger = Logger.getLogger(SessionRevocationPublisher.class);
+
+    public static final String SECRET_HEADER = "X-Revocation-Secret";
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+
+    private final URI endpoint;
+    private final String secret;
+    private final HttpClient httpClient;
+
+    public SessionRevocationPublisher(String endpoint, String secret) {
+        this.endpoint = URI.create(endpoint);
+        this.secret = secret;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(2))
+                .build();
+    }
+
+    public void publish(String realm, String userId, List<String> sessionIds) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("realm", realm);
+        payload.put("userId", userId);
+        payload.put("sessionIds", sessionIds);
+        payload.put("revokedAt", System.currentTimeMillis());
+
+        String body;
+        try {
+            body = JsonSerialization.writeValueAsString(payload);
+        } catch (IOException e) {
+            logger.error("Could not serialize session revocation for user " + userId, e);
+            return;
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(endpoint)
+                .timeout(Duration.ofSeconds(5))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (secret != null) {
+            request.header(SECRET_HEADER, secret);
+        }
+
+        send(request.build(), userId, 1);
+    }
+
+    private void send(HttpRequest request, String userId, int attempt) {
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error == null && response.statusCode() < 300) {
+                        if (attempt > 1) {
+                            logger.info("Session revocation for user " + userId + " delivered on attempt " + attempt);
+                        }
+                        return;
+                    }
+
+                    String failure = error != null
+                            ? error.getMessage()
+                            : "status " + response.statusCode();
+                    if (error == null && !isRetryable(response.statusCode())) {
+                        logger.error("Session revocation push rejected for user " + userId + " with " + failure);
+                    } else if (attempt >= MAX_ATTEMPTS) {
+                        logger.error("Session revocation push for user " + userId + " failed after "
+                                + attempt + " attempts: " + failure);
+                    } else {
+                        long delayMillis = INITIAL_BACKOFF.toMillis() << (attempt - 1);
+                        logger.warn("Session revocation push for user " + userId + " failed (" + failure
+                                + "), retrying in " + delayMillis + " ms");
+                        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS)
+                                .execute(() -> send(request, userId, attempt + 1));
+                    }
+                });
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}